@@ -0,0 +1,106 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PermissionRequest} state changes and {@link Set} view creation
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermissionRequestBenchmark {
+    @Param({"1", "3", "10"})
+    int size;
+
+    String[] permissions;
+    PermissionRequest request;
+
+    @Setup
+    public void setUp() {
+        permissions = new String[size];
+
+        for (int i = 0; i < size; i++)
+            permissions[i] = "android.permission.BENCH_" + i;
+
+        request = new PermissionRequest(1, permissions);
+    }
+
+    /**
+     * What every check() pays up front
+     */
+    @Benchmark
+    public PermissionRequest create() {
+        return new PermissionRequest(1, permissions);
+    }
+
+    /**
+     * A full result: every permission moves out of pending, alternately granted and denied
+     */
+    @Benchmark
+    public PermissionRequest resolve() {
+        final PermissionRequest r = new PermissionRequest(1, permissions);
+
+        for (int i = 0; i < permissions.length; i++) {
+            if ((i & 1) == 0)
+                r.granted(permissions[i]);
+            else
+                r.denied(permissions[i]);
+        }
+
+        return r;
+    }
+
+    /**
+     * Moving one permission back and forth on a live request
+     */
+    @Benchmark
+    public void transition(final Blackhole bh) {
+        final String permission = permissions[0];
+        request.granted(permission);
+        request.denied(permission);
+        bh.consume(request.hasDenies());
+    }
+
+    @Benchmark
+    public void views(final Blackhole bh) {
+        bh.consume(request.pending());
+        bh.consume(request.granted());
+        bh.consume(request.denied());
+    }
+
+    @Benchmark
+    public void sizes(final Blackhole bh) {
+        bh.consume(request.pendingSize());
+        bh.consume(request.grantsSize());
+        bh.consume(request.deniesSize());
+    }
+}
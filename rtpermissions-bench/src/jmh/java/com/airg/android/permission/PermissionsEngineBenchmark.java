@@ -0,0 +1,168 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full {@link PermissionsEngine#check(int, String...)} &rarr;
+ * {@link PermissionsEngine#onRequestPermissionsResult(int, String[], int[])} round trip against an
+ * in-memory host, and a check that the host can satisfy on its own. The host never wants a
+ * rationale, so denials are never taken for permanent ones and every denied check makes the
+ * round trip.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermissionsEngineBenchmark {
+    private static final int CODE = 1;
+
+    @Param({"1", "3", "10"})
+    int size;
+
+    String[] permissions;
+    int[] grants;
+    int[] denies;
+
+    PermissionsEngine engine;
+    PermissionsEngine grantedEngine;
+
+    final Listener listener = new Listener();
+
+    @Setup
+    public void setUp() {
+        // process wide: drop denials recorded by whatever ran before in this JVM
+        PermanentDenials.clear();
+
+        permissions = new String[size];
+        grants = new int[size];
+        denies = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            permissions[i] = "android.permission.BENCH_" + i;
+            grants[i] = PermissionsEngine.GRANTED;
+            denies[i] = -1;
+        }
+
+        engine = new PermissionsEngine(new InMemoryChecker(), null, null, null, listener, listener);
+
+        final InMemoryChecker granted = new InMemoryChecker();
+        Collections.addAll(granted.granted, permissions);
+        grantedEngine = new PermissionsEngine(granted, null, null, null, listener, listener);
+    }
+
+    @Benchmark
+    public int checkGranted() {
+        engine.check(CODE, permissions);
+        engine.onRequestPermissionsResult(CODE, permissions, grants);
+        return listener.reported;
+    }
+
+    @Benchmark
+    public int checkDenied() {
+        engine.check(CODE, permissions);
+        engine.onRequestPermissionsResult(CODE, permissions, denies);
+        return listener.reported;
+    }
+
+    @Benchmark
+    public int checkAlreadyGranted() {
+        grantedEngine.check(CODE, permissions);
+        return listener.reported;
+    }
+
+    /**
+     * Grants what it is told to, never wants a rationale, and drops system requests on the floor
+     */
+    static final class InMemoryChecker implements PermissionsChecker {
+        final Set<String> granted = new HashSet<>();
+
+        @Override
+        public boolean permissionIsGranted(@NonNull final String permission) {
+            return granted.contains(permission);
+        }
+
+        @Override
+        public Set<String> grantedPermissions(@NonNull final Set<String> permissions) {
+            if (granted.isEmpty())
+                return Collections.emptySet();
+
+            final Set<String> result = new HashSet<>(permissions);
+            result.retainAll(granted);
+            return result;
+        }
+
+        @Override
+        public Set<String> declaredPermissions() {
+            return null;
+        }
+
+        @Override
+        public Set<String> shouldShowRationaleDialog(@NonNull final Set<String> permissions) {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void requestPermission(final int requestCode, @NonNull final Set<String> permissions) {
+        }
+    }
+
+    static final class Listener implements PermissionsListener, RationaleDialog {
+        int reported;
+
+        @Override
+        public void onPermissionsGranted(final int requestCode, @NonNull final Set<String> granted) {
+            reported += granted.size();
+        }
+
+        @Override
+        public void onPermissionsUndeclared(final int requestCode, @NonNull final Set<String> undeclared) {
+        }
+
+        @Override
+        public void onPermissionDeclined(final int requestCode, @NonNull final Set<String> declined) {
+            reported -= declined.size();
+        }
+
+        @Override
+        public void show(final int requestCode,
+                         @NonNull final Set<String> permissions,
+                         @NonNull final Answer answer) {
+            answer.accepted();
+        }
+
+        @Override
+        public void dismissed(final int requestCode) {
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete permission flows against a {@link SimulatedPermissionsChecker} with binder latency.
+ * Sampled, so the report includes tail latency percentiles. Each flow is driven from a single
+ * thread standing in for the main thread; a third of the permissions are granted, a third denied,
+ * and a third denied for good. Every flow starts from a fresh install, so none is settled by a
+ * denial recorded in an earlier one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SimulatedFlowBenchmark {
+    @Param({"3"})
+    int size;
+
+    @Param({"0", "100"})
+    long binderLatencyMicros;
+
+    String[] permissions;
+
+    ExecutorService main;
+    SimulatedPermissionsChecker device;
+    PermissionsEngine engine;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        permissions = new String[size];
+
+        for (int i = 0; i < size; i++)
+            permissions[i] = "android.permission.BENCH_" + i;
+
+        main = Executors.newSingleThreadExecutor();
+        device = new SimulatedPermissionsChecker(main)
+                .binderLatency(binderLatencyMicros, TimeUnit.MICROSECONDS);
+
+        final Listener listener = new Listener();
+        engine = new PermissionsEngine(device, null, null, null, listener, listener);
+
+        device.deliverTo(new SimulatedPermissionsChecker.Receiver() {
+            @Override
+            public void onRequestPermissionsResult(final int requestCode,
+                                                   @NonNull final String[] permissions,
+                                                   @NonNull final int[] grantResults) {
+                engine.onRequestPermissionsResult(requestCode, permissions, grantResults);
+            }
+        });
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        main.shutdownNow();
+    }
+
+    /**
+     * Script a fresh user, so every flow goes all the way to the system dialog
+     */
+    @Setup(Level.Invocation)
+    public void reset() {
+        PermanentDenials.clear();
+
+        for (int i = 0; i < size; i++) {
+            device.forget(permissions[i])
+                    .answer(SimulatedPermissionsChecker.Answer.values()[i % 3], permissions[i]);
+        }
+    }
+
+    @Benchmark
+    public PermissionResult flow() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final PermissionResult[] result = new PermissionResult[1];
+
+        main.execute(new Runnable() {
+            @Override
+            public void run() {
+                engine.request(permissions).then(new PermissionPromise.Callback() {
+                    @Override
+                    public void onResult(@NonNull final PermissionResult r) {
+                        result[0] = r;
+                        done.countDown();
+                    }
+                });
+            }
+        });
+
+        done.await();
+        return result[0];
+    }
+
+    static final class Listener implements PermissionsListener, RationaleDialog {
+        @Override
+        public void onPermissionsGranted(final int requestCode, @NonNull final Set<String> granted) {
+        }
+
+        @Override
+        public void onPermissionsUndeclared(final int requestCode, @NonNull final Set<String> undeclared) {
+        }
+
+        @Override
+        public void onPermissionDeclined(final int requestCode, @NonNull final Set<String> declined) {
+        }
+
+        @Override
+        public void show(final int requestCode,
+                         @NonNull final Set<String> permissions,
+                         @NonNull final Answer answer) {
+            answer.accepted();
+        }
+
+        @Override
+        public void dismissed(final int requestCode) {
+        }
+    }
+}
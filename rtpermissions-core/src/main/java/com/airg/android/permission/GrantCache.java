@@ -0,0 +1,55 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of granted runtime permissions. Revoking a permission kills the process, so a
+ * cached grant can never go stale. Denials are never cached: the user may grant them at any time
+ * from the system settings, so they always go back to the system.
+ */
+final class GrantCache {
+    private static final Set<String> GRANTED =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private GrantCache() {
+    }
+
+    /**
+     * @param permission permission to look up
+     * @return <code>true</code> if the permission is known to be granted to this process
+     */
+    static boolean isGranted(@NonNull final String permission) {
+        return GRANTED.contains(permission);
+    }
+
+    /**
+     * Record a grant
+     *
+     * @param permission the granted permission
+     */
+    static void granted(@NonNull final String permission) {
+        GRANTED.add(permission);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link PermissionsMetrics} that aggregates events into fixed-bucket latency histograms and
+ * counters. Recording is a couple of atomic increments and never allocates. Read the numbers at
+ * any time from any thread to export them.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class HistogramMetrics implements PermissionsMetrics {
+    private final Histogram grantChecks = new Histogram();
+    private final Histogram rationaleShown = new Histogram();
+    private final Histogram systemResults = new Histogram();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong checkerCalls = new AtomicLong();
+    private final AtomicLong granted = new AtomicLong();
+    private final AtomicLong denied = new AtomicLong();
+    private final AtomicLong aborted = new AtomicLong();
+
+    @Override
+    public void onGrantsChecked(final int requestCode, final long elapsed) {
+        grantChecks.record(elapsed);
+    }
+
+    @Override
+    public void onRationaleShown(final int requestCode, final long sinceCheck) {
+        rationaleShown.record(sinceCheck);
+    }
+
+    @Override
+    public void onSystemResult(final int requestCode, final long sinceCheck) {
+        systemResults.record(sinceCheck);
+    }
+
+    @Override
+    public void onRequestFinished(final int requestCode,
+                                  final int calls,
+                                  final int grants,
+                                  final int denials,
+                                  final boolean wasAborted) {
+        requests.incrementAndGet();
+        checkerCalls.addAndGet(calls);
+        granted.addAndGet(grants);
+        denied.addAndGet(denials);
+
+        if (wasAborted)
+            aborted.incrementAndGet();
+    }
+
+    /**
+     * @return time spent reading grant state, per request
+     */
+    public Histogram grantChecks() {
+        return grantChecks;
+    }
+
+    /**
+     * @return time from request to rationale dialog
+     */
+    public Histogram rationaleShown() {
+        return rationaleShown;
+    }
+
+    /**
+     * @return time from request to system result
+     */
+    public Histogram systemResults() {
+        return systemResults;
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long checkerCalls() {
+        return checkerCalls.get();
+    }
+
+    public long granted() {
+        return granted.get();
+    }
+
+    public long denied() {
+        return denied.get();
+    }
+
+    public long aborted() {
+        return aborted.get();
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramMetrics{requests=" + requests + ", checkerCalls=" + checkerCalls
+                + ", granted=" + granted + ", denied=" + denied + ", aborted=" + aborted
+                + ", grantChecks=" + grantChecks + ", rationaleShown=" + rationaleShown
+                + ", systemResults=" + systemResults + "}";
+    }
+
+    /**
+     * Power-of-two microsecond buckets: bucket 0 holds samples under 1&micro;s, bucket
+     * <code>i</code> samples under 2<sup>i</sup>&micro;s, and the last bucket everything longer.
+     */
+    public static final class Histogram {
+        public static final int BUCKETS = 24;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        void record(final long nanos) {
+            final long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+            counts.incrementAndGet(Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros)));
+        }
+
+        /**
+         * @param bucket bucket index
+         * @return number of samples in the bucket
+         */
+        public long count(final int bucket) {
+            return counts.get(bucket);
+        }
+
+        /**
+         * @param bucket bucket index
+         * @return exclusive upper bound of the bucket in microseconds, or
+         * {@link Long#MAX_VALUE} for the last one
+         */
+        public static long upperBoundMicros(final int bucket) {
+            return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+        }
+
+        /**
+         * @return total number of samples
+         */
+        public long total() {
+            long total = 0;
+
+            for (int i = 0; i < BUCKETS; i++)
+                total += counts.get(i);
+
+            return total;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return upper bound in microseconds of the bucket holding the percentile, or 0 if empty
+         */
+        public long percentileMicros(final double percentile) {
+            final long total = total();
+
+            if (total == 0)
+                return 0;
+
+            final long rank = (long) Math.ceil(total * percentile / 100d);
+            long seen = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+
+                if (seen >= rank)
+                    return upperBoundMicros(i);
+            }
+
+            return upperBoundMicros(BUCKETS - 1);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("[");
+
+            for (int i = 0; i < BUCKETS; i++) {
+                if (i > 0)
+                    sb.append(',');
+
+                sb.append(counts.get(i));
+            }
+
+            return sb.append(']').toString();
+        }
+    }
+}
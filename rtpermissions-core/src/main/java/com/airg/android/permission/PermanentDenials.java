@@ -0,0 +1,123 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide record of permissions the user told the system never to ask for again. The system
+ * denies requests for those without showing anything, so the engine denies them itself rather
+ * than pay for the round trip. A permission is recorded when a request for it is denied and the
+ * system wanted a rationale shown for it before the request but no longer does. A permission that
+ * never wanted one may just have had its dialog dismissed, which leaves the flag unset too on
+ * Android 11 and later. A denial is forgotten as soon as the permission is seen granted, e.g. from
+ * the app's settings.
+ * <p>
+ * The record is kept across processes through an optional {@link Storage}.
+ */
+final class PermanentDenials {
+    private static final PermissionsLog LOG = PermissionsLog.tag("PermanentDenials");
+
+    /**
+     * Keeps the record on disk
+     */
+    interface Storage {
+        /**
+         * @param denied the whole record. Called on the thread that changed it.
+         */
+        void save(@NonNull final Set<String> denied);
+    }
+
+    private static final Set<String> DENIED =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private static volatile Storage storage;
+
+    private PermanentDenials() {
+    }
+
+    /**
+     * @param permission permission to look up
+     * @return <code>true</code> if the system is known to deny <code>permission</code> without
+     * asking
+     */
+    static boolean isDenied(@NonNull final String permission) {
+        return !DENIED.isEmpty() && DENIED.contains(permission);
+    }
+
+    /**
+     * Record a permanent denial
+     */
+    static void denied(@NonNull final String permission) {
+        if (DENIED.add(permission)) {
+            LOG.d("Recorded permanent denial of %s", permission);
+            save();
+        }
+    }
+
+    /**
+     * Forget a denial, if recorded, because the permission has been granted
+     */
+    static void granted(@NonNull final String permission) {
+        if (!DENIED.isEmpty() && DENIED.remove(permission)) {
+            LOG.d("%s was granted. Forgot its permanent denial.", permission);
+            save();
+        }
+    }
+
+    /**
+     * Merge a record loaded from disk and keep the record there from now on
+     *
+     * @param saved         the loaded record
+     * @param recordStorage where to keep it. May be <code>null</code> to keep it in memory only.
+     */
+    static void restore(@NonNull final Collection<String> saved, @Nullable final Storage recordStorage) {
+        DENIED.addAll(saved);
+        storage = recordStorage;
+
+        LOG.d("Restored %d permanent denials", saved.size());
+
+        // denials recorded before the load finished
+        if (DENIED.size() != saved.size())
+            save();
+    }
+
+    /**
+     * Forget every denial and stop keeping the record, e.g. between benchmark runs
+     */
+    static void clear() {
+        storage = null;
+        DENIED.clear();
+    }
+
+    private static void save() {
+        final Storage s = storage;
+
+        if (null != s)
+            s.save(new HashSet<>(DENIED));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the last known grant state of the watched permissions as a {@link PermissionMask} and
+ * reports only what changed since. A {@link #refresh()} costs one batched grant query and reports
+ * nothing if nothing changed.
+ * <p>
+ * Confined to the main thread.
+ */
+final class PermissionChangeDetector {
+    private static final PermissionsLog LOG = PermissionsLog.tag("PermissionChangeDetector");
+
+    private final PermissionsChecker checker;
+
+    private final Map<PermissionChangeListener, PermissionMask> listeners = new LinkedHashMap<>();
+
+    // every listener's permissions
+    private PermissionMask watched = new PermissionMask();
+    private Set<String> watchedNames = watched.toSet();
+
+    // the granted subset of watched, as last seen
+    private PermissionMask granted = new PermissionMask();
+
+    PermissionChangeDetector(@NonNull final PermissionsChecker permissionsChecker) {
+        checker = permissionsChecker;
+    }
+
+    /**
+     * Report changes to <code>permissions</code> to <code>listener</code>. Permissions not watched
+     * before are read right away as the baseline.
+     */
+    void watch(@NonNull final PermissionChangeListener listener, @NonNull final Set<String> permissions) {
+        final PermissionMask mask = maskOf(permissions);
+        final PermissionMask current = listeners.get(listener);
+
+        if (null == current)
+            listeners.put(listener, mask);
+        else
+            current.or(mask);
+
+        final PermissionMask unknown = mask.copy();
+        unknown.andNot(watched);
+
+        if (unknown.isEmpty())
+            return;
+
+        watched.or(unknown);
+        watchedNames = watched.toSet();
+        granted.or(maskOf(checker.grantedPermissions(unknown.toSet())));
+    }
+
+    void unwatch(@NonNull final PermissionChangeListener listener) {
+        if (null == listeners.remove(listener))
+            return;
+
+        final PermissionMask remaining = new PermissionMask();
+
+        for (final PermissionMask mask : listeners.values())
+            remaining.or(mask);
+
+        watched = remaining;
+        watchedNames = watched.toSet();
+        granted.and(watched);
+    }
+
+    /**
+     * Update the baseline with an outcome the host already heard about, e.g. from a request,
+     * so that it isn't reported again
+     */
+    void observed(@NonNull final Set<String> permissions, final boolean isGranted) {
+        for (final String permission : permissions) {
+            final int id = PermissionIds.of(permission);
+
+            if (!watched.get(id))
+                continue;
+
+            if (isGranted)
+                granted.set(id);
+            else
+                granted.clear(id);
+        }
+    }
+
+    /**
+     * Read the watched permissions again and tell each listener what changed among its own
+     */
+    void refresh() {
+        if (listeners.isEmpty())
+            return;
+
+        final PermissionMask now = maskOf(checker.grantedPermissions(watchedNames));
+
+        if (now.equals(granted))
+            return;
+
+        final PermissionMask gained = now.copy();
+        gained.andNot(granted);
+        final PermissionMask lost = granted.copy();
+        lost.andNot(now);
+        granted = now;
+
+        LOG.d("%d permissions granted and %d revoked since last seen", gained.size(), lost.size());
+
+        // listeners may unwatch as they are told
+        final List<Map.Entry<PermissionChangeListener, PermissionMask>> entries =
+                new ArrayList<>(listeners.entrySet());
+
+        for (final Map.Entry<PermissionChangeListener, PermissionMask> entry : entries) {
+            final PermissionMask mine = entry.getValue();
+            final PermissionMask myGains = gained.copy();
+            myGains.and(mine);
+            final PermissionMask myLosses = lost.copy();
+            myLosses.and(mine);
+
+            if (myGains.isEmpty() && myLosses.isEmpty())
+                continue;
+
+            entry.getKey().onPermissionsChanged(myGains.toSet(), myLosses.toSet());
+        }
+    }
+
+    private static PermissionMask maskOf(@NonNull final Set<String> permissions) {
+        final PermissionMask mask = new PermissionMask();
+
+        for (final String permission : permissions)
+            mask.set(PermissionIds.of(permission));
+
+        return mask;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.Set;
+
+/**
+ * Told when watched permissions change state outside of a request, e.g. in the app's system
+ * settings. Only the permissions the listener watches and whose state changed are reported.
+ */
+public interface PermissionChangeListener {
+    /**
+     * @param granted permissions granted since last seen. May be empty.
+     * @param revoked permissions no longer granted. May be empty.
+     */
+    void onPermissionsChanged(@NonNull final Set<String> granted, @NonNull final Set<String> revoked);
+}
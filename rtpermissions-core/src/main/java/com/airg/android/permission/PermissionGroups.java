@@ -0,0 +1,147 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The dangerous permission groups of a given API level. The system grants dangerous permissions by
+ * group:
+ * <ul>
+ * <li>Before API 26 granting one permission grants the group's other (manifest-declared)
+ * permissions with it, so they can be predicted granted without asking the system.</li>
+ * <li>From API 26 each permission has to be requested, but a request for a permission whose group
+ * is already granted is granted right away, with no dialog. Nothing to explain, so no rationale.
+ * </li>
+ * </ul>
+ * Only API levels up to 28 are modelled. Later ones changed the rules, e.g. background location
+ * (29) and approximate location (31) need a dialog of their own even with the group granted.
+ */
+final class PermissionGroups {
+    private static final String PERMISSION = "android.permission.";
+    private static final String VOICEMAIL = "com.android.voicemail.permission.";
+
+    private static final int O = 26;
+    private static final int P = 28;
+
+    private final Map<String, String[]> groupOf = new HashMap<>();
+    private final boolean wholeGroupGrants;
+
+    private PermissionGroups(final int api) {
+        wholeGroupGrants = api < O;
+
+        group("CALENDAR", "READ_CALENDAR", "WRITE_CALENDAR");
+        group("CAMERA", "CAMERA");
+        group("CONTACTS", "READ_CONTACTS", "WRITE_CONTACTS", "GET_ACCOUNTS");
+        group("LOCATION", "ACCESS_FINE_LOCATION", "ACCESS_COARSE_LOCATION");
+        group("MICROPHONE", "RECORD_AUDIO");
+        group("SENSORS", "BODY_SENSORS");
+        group("SMS", "SEND_SMS", "RECEIVE_SMS", "READ_SMS", "RECEIVE_WAP_PUSH", "RECEIVE_MMS");
+        group("STORAGE", "READ_EXTERNAL_STORAGE", "WRITE_EXTERNAL_STORAGE");
+
+        final List<String> phone = new ArrayList<>();
+        Collections.addAll(phone, "READ_PHONE_STATE", "CALL_PHONE", "USE_SIP", VOICEMAIL + "ADD_VOICEMAIL");
+
+        if (api >= O)
+            Collections.addAll(phone, "READ_PHONE_NUMBERS", "ANSWER_PHONE_CALLS");
+
+        if (api >= P) {
+            phone.add("ACCEPT_HANDOVER");
+            // the call log got a group of its own
+            group("CALL_LOG", "READ_CALL_LOG", "WRITE_CALL_LOG", "PROCESS_OUTGOING_CALLS");
+        } else {
+            Collections.addAll(phone, "READ_CALL_LOG", "WRITE_CALL_LOG", "PROCESS_OUTGOING_CALLS");
+        }
+
+        group("PHONE", phone.toArray(new String[phone.size()]));
+    }
+
+    /**
+     * @param api the device's API level (23 and up)
+     * @return the groups of <code>api</code> or <code>null</code> if they are not modelled, in
+     * which case every permission goes to the system
+     */
+    @Nullable
+    static PermissionGroups forApi(final int api) {
+        return api > P ? null : new PermissionGroups(api);
+    }
+
+    private void group(@NonNull final String name, @NonNull final String... permissions) {
+        final String[] members = new String[permissions.length];
+
+        for (int i = 0; i < permissions.length; i++)
+            members[i] = permissions[i].indexOf('.') < 0 ? PERMISSION + permissions[i] : permissions[i];
+
+        for (final String member : members)
+            groupOf.put(member, members);
+    }
+
+    /**
+     * @return <code>true</code> if granting a permission grants its whole group
+     */
+    boolean grantsWholeGroup() {
+        return wholeGroupGrants;
+    }
+
+    /**
+     * @param permission a permission
+     * @param request    the request asking for it
+     * @return <code>true</code> if another permission of the same group is known to be granted,
+     * either to the process or in <code>request</code>. Always <code>false</code> for permissions
+     * outside the table.
+     */
+    boolean groupGranted(@NonNull final String permission, @NonNull final PermissionRequest request) {
+        final String[] members = groupOf.get(permission);
+
+        if (null == members)
+            return false;
+
+        for (final String member : members)
+            if (!member.equals(permission)
+                    && (GrantCache.isGranted(member) || request.isGranted(member)))
+                return true;
+
+        return false;
+    }
+
+    /**
+     * @return the pending permissions of <code>request</code> minus the ones whose group is granted
+     */
+    Set<String> ungrantedGroups(@NonNull final PermissionRequest request) {
+        final Set<String> result = new LinkedHashSet<>(request.pendingSize());
+
+        for (int id = request.nextPending(0); id >= 0; id = request.nextPending(id + 1)) {
+            final String permission = PermissionIds.name(id);
+
+            if (!groupGranted(permission, request))
+                result.add(permission);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns permission names into small, process-wide integer ids so that request state can be
+ * kept in bit masks rather than sets of strings. Ids are dense and never reused; an app only ever
+ * asks for a handful of distinct permissions, so the table stays tiny.
+ */
+final class PermissionIds {
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[0];
+
+    private PermissionIds() {
+    }
+
+    /**
+     * @param permission permission name
+     * @return the id of the permission. Interned on first use.
+     */
+    static int of(@NonNull final String permission) {
+        final Integer id = IDS.get(permission);
+        return null != id ? id : intern(permission);
+    }
+
+    /**
+     * @param id a previously interned id
+     * @return the permission name for the id
+     */
+    static String name(final int id) {
+        return names[id];
+    }
+
+    private static synchronized int intern(final String permission) {
+        final Integer existing = IDS.get(permission);
+
+        if (null != existing)
+            return existing;
+
+        final int id = names.length;
+        final String[] grown = Arrays.copyOf(names, id + 1);
+        grown[id] = permission;
+        // publish the name before the id so that name(of(p)) never misses
+        names = grown;
+        IDS.put(permission, id);
+        return id;
+    }
+}
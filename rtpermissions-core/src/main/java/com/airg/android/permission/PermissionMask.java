@@ -0,0 +1,177 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A mutable set of {@link PermissionIds}. The first 64 ids live in a single <code>long</code>;
+ * higher ids spill over into a {@link BitSet} that is only allocated when needed.
+ */
+final class PermissionMask {
+    private long bits;
+    private BitSet overflow;
+
+    void set(final int id) {
+        if (id < Long.SIZE) {
+            bits |= 1L << id;
+            return;
+        }
+
+        if (null == overflow)
+            overflow = new BitSet();
+
+        overflow.set(id - Long.SIZE);
+    }
+
+    void clear(final int id) {
+        if (id < Long.SIZE)
+            bits &= ~(1L << id);
+        else if (null != overflow)
+            overflow.clear(id - Long.SIZE);
+    }
+
+    boolean get(final int id) {
+        return id < Long.SIZE
+                ? (bits & (1L << id)) != 0
+                : null != overflow && overflow.get(id - Long.SIZE);
+    }
+
+    /**
+     * Remove every id present in <code>other</code> from this mask
+     */
+    void andNot(final PermissionMask other) {
+        bits &= ~other.bits;
+
+        if (null != overflow && null != other.overflow)
+            overflow.andNot(other.overflow);
+    }
+
+    /**
+     * Add every id present in <code>other</code> to this mask
+     */
+    void or(final PermissionMask other) {
+        bits |= other.bits;
+
+        if (null == other.overflow)
+            return;
+
+        if (null == overflow)
+            overflow = new BitSet();
+
+        overflow.or(other.overflow);
+    }
+
+    /**
+     * Keep only the ids also present in <code>other</code>
+     */
+    void and(final PermissionMask other) {
+        bits &= other.bits;
+
+        if (null != overflow) {
+            if (null == other.overflow)
+                overflow.clear();
+            else
+                overflow.and(other.overflow);
+        }
+    }
+
+    boolean isEmpty() {
+        return bits == 0 && (null == overflow || overflow.isEmpty());
+    }
+
+    int size() {
+        return Long.bitCount(bits) + (null == overflow ? 0 : overflow.cardinality());
+    }
+
+    /**
+     * @param from first id to consider
+     * @return the next id at or after <code>from</code> in this mask or <code>-1</code> if none
+     */
+    int next(final int from) {
+        if (from < Long.SIZE) {
+            final long remaining = bits & (-1L << from);
+
+            if (remaining != 0)
+                return Long.numberOfTrailingZeros(remaining);
+        }
+
+        if (null == overflow)
+            return -1;
+
+        final int next = overflow.nextSetBit(Math.max(0, from - Long.SIZE));
+        return next < 0 ? -1 : next + Long.SIZE;
+    }
+
+    /**
+     * @return a copy of this mask
+     */
+    PermissionMask copy() {
+        final PermissionMask copy = new PermissionMask();
+        copy.bits = bits;
+
+        if (null != overflow)
+            copy.overflow = (BitSet) overflow.clone();
+
+        return copy;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o)
+            return true;
+
+        if (!(o instanceof PermissionMask))
+            return false;
+
+        final PermissionMask other = (PermissionMask) o;
+
+        if (bits != other.bits)
+            return false;
+
+        final boolean empty = null == overflow || overflow.isEmpty();
+        final boolean otherEmpty = null == other.overflow || other.overflow.isEmpty();
+
+        return empty ? otherEmpty : overflow.equals(other.overflow);
+    }
+
+    @Override
+    public int hashCode() {
+        final int hash = (int) (bits ^ (bits >>> 32));
+        return null == overflow || overflow.isEmpty() ? hash : 31 * hash + overflow.hashCode();
+    }
+
+    /**
+     * @return a new, unmodifiable set of the permission names in this mask
+     */
+    Set<String> toSet() {
+        if (isEmpty())
+            return Collections.emptySet();
+
+        final Set<String> names = new HashSet<>();
+
+        for (int id = next(0); id >= 0; id = next(id + 1))
+            names.add(PermissionIds.name(id));
+
+        return Collections.unmodifiableSet(names);
+    }
+}
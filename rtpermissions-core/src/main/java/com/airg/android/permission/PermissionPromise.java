@@ -0,0 +1,260 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lightweight promise of a {@link PermissionResult}, returned by
+ * <code>PermissionsHandler.request(String...)</code>. Continuations may be added at any time, from any
+ * thread; those added after completion run right away. Each continuation runs on the
+ * {@link Executor} it was registered with, so dependent work (e.g. starting a loader or location
+ * updates) can go straight to wherever it needs to run.
+ * <p>
+ * Every continuation returns a new promise that completes once the continuation is done, so steps
+ * can be sequenced. A {@link Step} may itself start something asynchronous, e.g. the next request,
+ * and the promise it returns completes with that.
+ * <p>
+ * A continuation that throws doesn't hold up the others: the exception is logged, the remaining
+ * continuations still run, and the promise it returned still completes.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class PermissionPromise {
+    private static final PermissionsLog LOG = PermissionsLog.tag("PermissionPromise");
+
+    /**
+     * Receives the result of a request
+     */
+    public interface Callback {
+        void onResult(@NonNull final PermissionResult result);
+    }
+
+    /**
+     * Receives the result of a request and may start the next asynchronous step
+     */
+    public interface Step {
+        /**
+         * @return the next step's promise or <code>null</code> if there is nothing to wait for
+         */
+        @Nullable
+        PermissionPromise onResult(@NonNull final PermissionResult result);
+    }
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull final Runnable command) {
+            command.run();
+        }
+    };
+
+    // either the head of a stack of pending continuations or the PermissionResult
+    private final AtomicReference<Object> state = new AtomicReference<Object>(Continuation.NONE);
+
+    private final Set<String> requested;
+
+    // accumulated by the handler before completion. Confined like PermissionRequest.
+    private final Set<String> granted = new HashSet<>();
+    private final Set<String> denied = new HashSet<>();
+    private final Set<String> undeclared = new HashSet<>();
+
+    PermissionPromise(@NonNull final String... permissions) {
+        requested = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(permissions)));
+    }
+
+    // a promise that follows another one. Only ever settled.
+    private PermissionPromise(@NonNull final Set<String> permissions) {
+        requested = permissions;
+    }
+
+    /**
+     * Run <code>callback</code> on the thread that completes the request (usually the main thread)
+     *
+     * @param callback continuation
+     * @return a promise of the same result, completed once <code>callback</code> has run
+     */
+    public PermissionPromise then(@NonNull final Callback callback) {
+        return then(DIRECT, callback);
+    }
+
+    /**
+     * Run <code>callback</code> on <code>executor</code> once the request completes
+     *
+     * @param executor executor for the continuation
+     * @param callback continuation
+     * @return a promise of the same result, completed once <code>callback</code> has run
+     */
+    public PermissionPromise then(@NonNull final Executor executor,
+                                  @NonNull final Callback callback) {
+        final PermissionPromise next = new PermissionPromise(requested);
+
+        listen(executor, new Callback() {
+            @Override
+            public void onResult(@NonNull final PermissionResult result) {
+                try {
+                    callback.onResult(result);
+                } finally {
+                    next.settle(result);
+                }
+            }
+        });
+
+        return next;
+    }
+
+    /**
+     * Run <code>step</code> on the thread that completes the request (usually the main thread)
+     *
+     * @param step continuation
+     * @return a promise of the result of the promise <code>step</code> returns, or of this result
+     * if it returns <code>null</code>
+     */
+    public PermissionPromise thenRequest(@NonNull final Step step) {
+        return thenRequest(DIRECT, step);
+    }
+
+    /**
+     * Run <code>step</code> on <code>executor</code> once the request completes, e.g. to request
+     * further permissions once the first ones are granted
+     *
+     * @param executor executor for the continuation
+     * @param step     continuation
+     * @return a promise of the result of the promise <code>step</code> returns, or of this result
+     * if it returns <code>null</code>
+     */
+    public PermissionPromise thenRequest(@NonNull final Executor executor,
+                                         @NonNull final Step step) {
+        final PermissionPromise next = new PermissionPromise(requested);
+
+        listen(executor, new Callback() {
+            @Override
+            public void onResult(@NonNull final PermissionResult result) {
+                PermissionPromise following = null;
+
+                try {
+                    following = step.onResult(result);
+                } finally {
+                    if (null == following)
+                        next.settle(result);
+                    else
+                        following.listen(DIRECT, new Callback() {
+                            @Override
+                            public void onResult(@NonNull final PermissionResult r) {
+                                next.settle(r);
+                            }
+                        });
+                }
+            }
+        });
+
+        return next;
+    }
+
+    /**
+     * @return <code>true</code> if the request has completed
+     */
+    public boolean isDone() {
+        return state.get() instanceof PermissionResult;
+    }
+
+    void granted(@NonNull final Set<String> permissions) {
+        granted.addAll(permissions);
+    }
+
+    void denied(@NonNull final Set<String> permissions) {
+        denied.addAll(permissions);
+    }
+
+    void undeclared(@NonNull final Set<String> permissions) {
+        undeclared.addAll(permissions);
+    }
+
+    void complete(final boolean aborted) {
+        settle(new PermissionResult(requested, granted, denied, undeclared, aborted));
+    }
+
+    private void listen(@NonNull final Executor executor, @NonNull final Callback callback) {
+        while (true) {
+            final Object current = state.get();
+
+            if (current instanceof PermissionResult) {
+                dispatch(executor, callback, (PermissionResult) current);
+                return;
+            }
+
+            if (state.compareAndSet(current,
+                    new Continuation(executor, callback, (Continuation) current)))
+                return;
+        }
+    }
+
+    private void settle(@NonNull final PermissionResult result) {
+        Object current;
+        do {
+            current = state.get();
+
+            if (current instanceof PermissionResult)
+                return;
+        } while (!state.compareAndSet(current, result));
+
+        // continuations are stacked. Run them in the order they were added.
+        Continuation reversed = Continuation.NONE;
+        for (Continuation c = (Continuation) current; c != Continuation.NONE; c = c.next)
+            reversed = new Continuation(c.executor, c.callback, reversed);
+
+        for (Continuation c = reversed; c != Continuation.NONE; c = c.next)
+            dispatch(c.executor, c.callback, result);
+    }
+
+    private static void dispatch(final Executor executor,
+                                 final Callback callback,
+                                 final PermissionResult result) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callback.onResult(result);
+                } catch (RuntimeException e) {
+                    LOG.e(e, "Permission promise continuation failed");
+                }
+            }
+        });
+    }
+
+    private static final class Continuation {
+        static final Continuation NONE = new Continuation(null, null, null);
+
+        final Executor executor;
+        final Callback callback;
+        final Continuation next;
+
+        Continuation(final Executor e, final Callback c, final Continuation n) {
+            executor = e;
+            callback = c;
+            next = n;
+        }
+    }
+}
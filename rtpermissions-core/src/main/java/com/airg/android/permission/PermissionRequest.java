@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2016. airG Inc.
+ * All rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of airG Inc. and its suppliers, if any.  The
+ * intellectual and technical concepts contained herein are
+ * proprietary to airG Inc. and its suppliers and may be
+ * covered by U.S. and Foreign Patents, patents in process,
+ * and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this
+ * material is strictly forbidden unless prior written
+ * permission is obtained from airG Inc..
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Created by mahramf.
+ * <p>
+ * Permission state is kept as {@link PermissionMask}s of interned {@link PermissionIds}, so moving
+ * a permission between the pending, granted, and denied sets is a couple of bit operations. The
+ * {@link Set} views are only built when asked for.
+ * <p>
+ * Not thread safe. A request is only ever touched by whoever moved it into its current state in
+ * the {@link PermissionsEngine} state machine.
+ */
+final class PermissionRequest {
+    final int code;
+    // set for requests made via PermissionsEngine#request. Those report here, not to the client.
+    final PermissionPromise promise;
+
+    // PermissionsEngine#PRIORITY_HIGH or PRIORITY_LOW
+    int priority = PermissionsEngine.PRIORITY_HIGH;
+
+    // the code the system request went out with. Set by the PermissionsCoordinator.
+    int systemCode = -1;
+
+    // permissions the rationale dialog is (or was last) shown for
+    Set<String> rationale;
+
+    // for PermissionsMetrics
+    final long createdAt = System.nanoTime();
+    int checkerCalls;
+    int grantsReported;
+    int deniesReported;
+
+    // everything originally asked for. Never changes.
+    private final PermissionMask requestedPermissions;
+
+    private final PermissionMask grantedPermissions = new PermissionMask();
+    private final PermissionMask pendingPermissions = new PermissionMask();
+    private final PermissionMask deniedPermissions = new PermissionMask();
+
+    PermissionRequest(final int requestCode, @NonNull final String... permissions) {
+        this(requestCode, null, permissions);
+    }
+
+    PermissionRequest(final int requestCode,
+                      final PermissionPromise requestPromise,
+                      @NonNull final String... permissions) {
+        code = requestCode;
+        promise = requestPromise;
+
+        for (final String permission : permissions)
+            pendingPermissions.set(PermissionIds.of(permission));
+
+        requestedPermissions = pendingPermissions.copy();
+    }
+
+    /**
+     * @return <code>true</code> if <code>other</code> asks for the same permissions with the same
+     * request code
+     */
+    boolean sameAs(final PermissionRequest other) {
+        return null != other
+                && code == other.code
+                && requestedPermissions.equals(other.requestedPermissions);
+    }
+
+    void granted(final String permission) {
+        granted(PermissionIds.of(permission));
+    }
+
+    void granted(final int id) {
+        grantedPermissions.set(id);
+        pendingPermissions.clear(id);
+        deniedPermissions.clear(id);
+    }
+
+    void denied(final String permission) {
+        final int id = PermissionIds.of(permission);
+        deniedPermissions.set(id);
+        pendingPermissions.clear(id);
+        grantedPermissions.clear(id);
+    }
+
+    void remove (final String permission) {
+        remove(PermissionIds.of(permission));
+    }
+
+    void remove (final int id) {
+        pendingPermissions.clear(id);
+        deniedPermissions.clear(id);
+        grantedPermissions.clear(id);
+    }
+
+    void remove (final Collection<String> permissions) {
+        for (final String permission : permissions)
+            remove(permission);
+    }
+
+    Set<String> granted () {
+        return grantedPermissions.toSet();
+    }
+
+    Set<String> pending () {
+        return pendingPermissions.toSet();
+    }
+
+    Set<String> denied () {
+        return deniedPermissions.toSet();
+    }
+
+    /**
+     * Walk the pending permissions without building a set:
+     * <code>for (int id = nextPending(0); id &gt;= 0; id = nextPending(id + 1))</code>. Moving the
+     * current permission out of pending along the way is fine.
+     *
+     * @param from first {@link PermissionIds id} to consider
+     * @return the next pending id at or after <code>from</code> or <code>-1</code> if none
+     */
+    int nextPending (final int from) {
+        return pendingPermissions.next(from);
+    }
+
+    boolean hasPending () {
+        return !pendingPermissions.isEmpty();
+    }
+
+    boolean hasGrants () {
+        return !grantedPermissions.isEmpty();
+    }
+
+    boolean hasDenies () {
+        return !deniedPermissions.isEmpty();
+    }
+
+    boolean isSatisfied() {
+        return !hasPending();
+    }
+
+    int pendingSize () {
+        return pendingPermissions.size();
+    }
+
+    int grantsSize () {
+        return grantedPermissions.size();
+    }
+
+    int deniesSize () {
+        return deniedPermissions.size();
+    }
+
+    /**
+     * @return everything originally asked for, reported or not
+     */
+    Set<String> requested () {
+        return requestedPermissions.toSet();
+    }
+
+    boolean isPending (final String permission) {
+        return pendingPermissions.get(PermissionIds.of(permission));
+    }
+
+    boolean isGranted (final String permission) {
+        return grantedPermissions.get(PermissionIds.of(permission));
+    }
+
+    boolean isDenied (final String permission) {
+        return deniedPermissions.get(PermissionIds.of(permission));
+    }
+}
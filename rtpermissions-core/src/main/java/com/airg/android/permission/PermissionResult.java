@@ -0,0 +1,108 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Outcome of a <code>PermissionsHandler.request(String...)</code>
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class PermissionResult {
+    private final Set<String> requested;
+    private final Set<String> granted;
+    private final Set<String> denied;
+    private final Set<String> undeclared;
+    private final boolean aborted;
+
+    PermissionResult(@NonNull final Set<String> requestedPermissions,
+                     @NonNull final Set<String> grantedPermissions,
+                     @NonNull final Set<String> deniedPermissions,
+                     @NonNull final Set<String> undeclaredPermissions,
+                     final boolean wasAborted) {
+        requested = requestedPermissions;
+        granted = Collections.unmodifiableSet(new HashSet<>(grantedPermissions));
+        denied = Collections.unmodifiableSet(new HashSet<>(deniedPermissions));
+        undeclared = undeclaredPermissions.isEmpty()
+                ? Collections.<String>emptySet()
+                : Collections.unmodifiableSet(new HashSet<>(undeclaredPermissions));
+        aborted = wasAborted;
+    }
+
+    /**
+     * @return all requested permissions
+     */
+    public Set<String> requested() {
+        return requested;
+    }
+
+    /**
+     * @return the granted permissions
+     */
+    public Set<String> granted() {
+        return granted;
+    }
+
+    /**
+     * @return the denied permissions
+     */
+    public Set<String> denied() {
+        return denied;
+    }
+
+    /**
+     * @return requested permissions missing from the app's manifest. The system never grants
+     * those, so they were resolved without asking. Not included in {@link #denied()}.
+     */
+    public Set<String> undeclared() {
+        return undeclared;
+    }
+
+    /**
+     * @param permission a requested permission
+     * @return <code>true</code> if the permission was granted
+     */
+    public boolean isGranted(@NonNull final String permission) {
+        return granted.contains(permission);
+    }
+
+    /**
+     * @return <code>true</code> if every requested permission was granted
+     */
+    public boolean allGranted() {
+        return !aborted && granted.containsAll(requested);
+    }
+
+    /**
+     * @return <code>true</code> if the request was aborted via <code>PermissionsHandler.abort()</code>
+     * before it completed. Permissions that were granted up to that point are still reported.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    @Override
+    public String toString() {
+        return "PermissionResult{granted=" + granted + ", denied=" + denied + ", undeclared=" + undeclared + ", aborted=" + aborted + "}";
+    }
+}
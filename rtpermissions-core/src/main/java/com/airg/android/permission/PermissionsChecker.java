@@ -0,0 +1,49 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.Set;
+
+/**
+ * Checks for permissions. The grant queries may be called from any thread; everything else is
+ * called on the main thread.
+ */
+interface PermissionsChecker {
+    boolean permissionIsGranted(@NonNull final String permission);
+
+    /**
+     * Batch version of {@link #permissionIsGranted(String)}
+     *
+     * @param permissions permissions to check
+     * @return the subset of <code>permissions</code> that has been granted
+     */
+    Set<String> grantedPermissions(@NonNull final Set<String> permissions);
+
+    /**
+     * @return every permission declared in the app's manifest, or <code>null</code> if not known.
+     * Read at most once per process.
+     */
+    Set<String> declaredPermissions();
+
+    Set<String> shouldShowRationaleDialog(@NonNull final Set<String> permissions);
+
+    void requestPermission(final int requestCode, @NonNull final Set<String> permissions);
+}
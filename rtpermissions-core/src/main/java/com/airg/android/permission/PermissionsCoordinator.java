@@ -0,0 +1,458 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One per host (on Android, per Activity). Collects the system permission requests that all
+ * {@link PermissionsEngine}s attached to the host make while handling the same main thread message
+ * (e.g. the activity's and its fragments' <code>onStart</code>) and issues them as a single
+ * <code>requestPermissions</code> call. The system can only show one
+ * permission request at a time, so without this the handlers race and all but one lose.
+ * <p>
+ * The coordinator also owns the request codes that go to the system. Each merged request gets
+ * its own code from {@link #FIRST_CODE} up, never a caller's, so codes can't collide with each
+ * other or with the host's own and always fit in the 16 bits fragments allow. The merged request
+ * is issued through the first handler's checker, so the results arrive wherever that handler's
+ * host relays them. From there, the code leads straight to the handlers that took part and the
+ * coordinator hands each the results for the permissions it asked for under its own request code.
+ * <p>
+ * It also decides when a request may ask the user. High priority requests always may. Low
+ * priority ones wait, in order, until the host is idle: no other request of the host is asking the
+ * user, no system request is out, and the main thread has nothing else to do. They go one at a
+ * time, so the path to the first useful screen never waits behind an optional prompt.
+ * <p>
+ * Handlers and their requests are only held weakly. On Android the coordinator is looked up by
+ * its Activity in a weak map, and a handler leads back to the Activity, so a strong reference from
+ * here would keep the Activity alive for as long as any of its requests stays unanswered. A
+ * handler that is gone, or has moved on from the request the coordinator knows it by, no longer
+ * holds up anything: not the next system request, not deferred requests, and not its request
+ * code.
+ */
+final class PermissionsCoordinator {
+    private static final PermissionsLog LOG = PermissionsLog.tag("PermissionsCoordinator");
+
+    /**
+     * System request codes run from here through <code>0xfeff</code>
+     */
+    static final int FIRST_CODE = 0xfe00;
+    private static final int CODES = 0x100;
+
+    private final Scheduler scheduler;
+
+    // requests collected since the last flush
+    private final List<Entry> pending = new ArrayList<>();
+    // the requests behind each system request code in use, indexed by code - FIRST_CODE
+    private final Batch[] issued = new Batch[CODES];
+    // the system request currently showing, if any
+    private Batch inFlight;
+
+    private int nextCode = 0;
+
+    private boolean flushScheduled = false;
+
+    // requests that may ask the user and have not finished yet
+    private final List<Entry> admitted = new ArrayList<>();
+    // low priority requests waiting for the host to go idle
+    private final List<Entry> deferred = new ArrayList<>();
+
+    private boolean releaseScheduled = false;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            flush();
+        }
+    };
+
+    private final Runnable release = new Runnable() {
+        @Override
+        public void run() {
+            releaseScheduled = false;
+            release();
+        }
+    };
+
+    /**
+     * @param mainThread runs the flush after the current main thread message
+     */
+    PermissionsCoordinator(@NonNull final Scheduler mainThread) {
+        scheduler = mainThread;
+    }
+
+    /**
+     * Request permissions on behalf of a handler. The request goes out with all others made
+     * during the same main thread message.
+     *
+     * @param handler     requesting handler
+     * @param request     the handler's request. Its {@link PermissionRequest#systemCode} is set
+     *                    once it goes out.
+     * @param permissions permissions to request
+     */
+    void requestPermission(@NonNull final PermissionsEngine handler,
+                           @NonNull final PermissionRequest request,
+                           @NonNull final Set<String> permissions) {
+        if (permissions.isEmpty())
+            throw new IllegalArgumentException("No permissions specified");
+
+        pending.add(new Entry(handler, request, permissions));
+        scheduleFlush();
+    }
+
+    /**
+     * Ask whether a request may go on to ask the user. If not, it is deferred until the host is
+     * idle and then handed back through {@link PermissionsEngine#resume(PermissionRequest)}.
+     *
+     * @param handler requesting handler
+     * @param request the handler's request
+     * @return <code>true</code> if the request may ask the user now
+     */
+    boolean admit(@NonNull final PermissionsEngine handler, @NonNull final PermissionRequest request) {
+        if (indexOf(admitted, request) >= 0)
+            return true;
+
+        if (request.priority >= PermissionsEngine.PRIORITY_HIGH) {
+            admitted.add(new Entry(handler, request, null));
+            return true;
+        }
+
+        deferred.add(new Entry(handler, request, null));
+        scheduleRelease();
+        return false;
+    }
+
+    /**
+     * Forget a deferred request, e.g. because a high priority request preempted it. It is
+     * admitted again from scratch.
+     */
+    void withdraw(@NonNull final PermissionRequest request) {
+        for (int i = deferred.size() - 1; i >= 0; i--)
+            if (deferred.get(i).request.get() == request)
+                deferred.remove(i);
+    }
+
+    /**
+     * A request has finished, one way or another. Deferred requests may go once the host is idle.
+     */
+    void done(@NonNull final PermissionRequest request) {
+        withdraw(request);
+
+        final int index = indexOf(admitted, request);
+
+        if (index < 0)
+            return;
+
+        admitted.remove(index);
+
+        if (!deferred.isEmpty())
+            scheduleRelease();
+    }
+
+    /**
+     * Register a request that is already past admission, e.g. one that moved here from the
+     * coordinator of a previous activity
+     */
+    void join(@NonNull final PermissionsEngine handler, @NonNull final PermissionRequest request) {
+        if (indexOf(admitted, request) < 0)
+            admitted.add(new Entry(handler, request, null));
+    }
+
+    /**
+     * Register a request that was in flight when the process died, or when its host was
+     * recreated, and has just been restored. It may have been merged with others; they are all
+     * found again under the same system request code.
+     *
+     * @param handler handler that restored the request
+     * @param request the restored request
+     * @return <code>false</code> if the request never went out
+     */
+    boolean restored(@NonNull final PermissionsEngine handler, @NonNull final PermissionRequest request) {
+        final int slot = request.systemCode - FIRST_CODE;
+
+        if (slot < 0 || slot >= CODES)
+            return false;
+
+        if (null == issued[slot] || issued[slot].isStale())
+            issued[slot] = new Batch();
+
+        // the system still shows it, or is about to deliver its results
+        if (null == inFlight)
+            inFlight = issued[slot];
+
+        issued[slot].add(new Entry(handler, request, request.pending()));
+        join(handler, request);
+        return true;
+    }
+
+    /**
+     * Drop any requests from the specified handler that have not yet been sent to the system
+     *
+     * @param handler the handler
+     */
+    void cancel(@NonNull final PermissionsEngine handler) {
+        for (int i = pending.size() - 1; i >= 0; i--)
+            if (pending.get(i).handler.get() == handler)
+                pending.remove(i);
+
+        for (int i = deferred.size() - 1; i >= 0; i--)
+            if (deferred.get(i).handler.get() == handler)
+                deferred.remove(i);
+    }
+
+    /**
+     * Split a system result amongst the handlers that took part in the request with
+     * <code>requestCode</code>.
+     *
+     * @return <code>true</code> if the result was for a request issued by this coordinator and
+     * has been dispatched
+     */
+    boolean dispatch(final int requestCode,
+                     @NonNull final String[] permissions,
+                     @NonNull final int[] grantResults) {
+        final int slot = requestCode - FIRST_CODE;
+
+        if (slot < 0 || slot >= CODES)
+            return false;
+
+        final Batch members = issued[slot];
+
+        if (null == members)
+            return false;
+
+        issued[slot] = null;
+
+        if (members == inFlight)
+            inFlight = null;
+
+        LOG.d("Dispatching %d results to %d handlers", permissions.length, members.size());
+
+        try {
+            for (final Entry member : members)
+                member.deliver(permissions, grantResults);
+        } finally {
+            if (!pending.isEmpty())
+                scheduleFlush();
+            else if (!deferred.isEmpty())
+                scheduleRelease();
+        }
+
+        return true;
+    }
+
+    /**
+     * @return a free system request code. Restored requests may still hold some; codes of
+     * requests nobody waits on any more are taken back.
+     */
+    private int allocate() {
+        for (int i = 0; i < CODES; i++) {
+            final int slot = (nextCode + i) % CODES;
+
+            if (null == issued[slot] || issued[slot].isStale()) {
+                nextCode = (slot + 1) % CODES;
+                return slot;
+            }
+        }
+
+        throw new IllegalStateException("Out of request codes");
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled)
+            return;
+
+        flushScheduled = true;
+        scheduler.post(flush);
+    }
+
+    private void scheduleRelease() {
+        if (releaseScheduled)
+            return;
+
+        releaseScheduled = true;
+        scheduler.postIdle(release);
+    }
+
+    /**
+     * Let the first deferred request go if the host is idle. Whatever finishes next schedules
+     * another try.
+     */
+    private void release() {
+        purge(deferred);
+        purge(admitted);
+
+        if (deferred.isEmpty() || !admitted.isEmpty() || !pending.isEmpty() || isWaitingOnSystem())
+            return;
+
+        final Entry next = deferred.remove(0);
+        final PermissionsEngine handler = next.handler.get();
+        final PermissionRequest request = next.request.get();
+        admitted.add(next);
+
+        LOG.d("Host is idle. Releasing deferred request %d", next.code);
+
+        // purge() made sure neither is gone
+        if (null == handler || null == request || !handler.resume(request)) {
+            admitted.remove(next);
+
+            if (!deferred.isEmpty())
+                scheduleRelease();
+        }
+    }
+
+    private void flush() {
+        purge(pending);
+
+        // the system only shows one request at a time. The rest goes out once results come back.
+        if (pending.isEmpty() || isWaitingOnSystem())
+            return;
+
+        final PermissionsEngine lead = pending.get(0).handler.get();
+        final Set<String> merged = new LinkedHashSet<>();
+        final int slot = allocate();
+        final int code = FIRST_CODE + slot;
+
+        for (final Entry entry : pending) {
+            merged.addAll(entry.permissions);
+
+            final PermissionRequest request = entry.request.get();
+
+            if (null != request)
+                request.systemCode = code;
+        }
+
+        inFlight = new Batch();
+        inFlight.addAll(pending);
+        issued[slot] = inFlight;
+        pending.clear();
+
+        LOG.d("Requesting %d permissions for %d handlers with code %d", merged.size(), inFlight.size(), code);
+
+        if (null != lead)
+            lead.requestFromSystem(code, merged);
+    }
+
+    /**
+     * @return <code>true</code> if a system request is out and someone still waits on it. If
+     * nobody does, e.g. because its results went to the handlers of a recreated host, it no
+     * longer holds up the next one.
+     */
+    private boolean isWaitingOnSystem() {
+        if (null == inFlight)
+            return false;
+
+        if (!inFlight.isStale())
+            return true;
+
+        LOG.d("Nobody waits on the system request in flight any more");
+
+        for (int i = 0; i < CODES; i++)
+            if (issued[i] == inFlight)
+                issued[i] = null;
+
+        inFlight = null;
+        return false;
+    }
+
+    private static void purge(@NonNull final List<Entry> entries) {
+        for (int i = entries.size() - 1; i >= 0; i--)
+            if (entries.get(i).isStale())
+                entries.remove(i);
+    }
+
+    private static int indexOf(@NonNull final List<Entry> entries, @NonNull final PermissionRequest request) {
+        for (int i = 0; i < entries.size(); i++)
+            if (entries.get(i).request.get() == request)
+                return i;
+
+        return -1;
+    }
+
+    /**
+     * The requests behind one system request
+     */
+    private static final class Batch extends ArrayList<Entry> {
+        private static final long serialVersionUID = 1L;
+
+        boolean isStale() {
+            for (final Entry entry : this)
+                if (!entry.isStale())
+                    return false;
+
+            return true;
+        }
+    }
+
+    private final class Entry {
+        final WeakReference<PermissionsEngine> handler;
+        final WeakReference<PermissionRequest> request;
+        final int code;
+        final Set<String> permissions;
+
+        Entry(final PermissionsEngine h, final PermissionRequest r, final Set<String> perms) {
+            handler = new WeakReference<>(h);
+            request = new WeakReference<>(r);
+            code = r.code;
+            permissions = perms;
+        }
+
+        /**
+         * @return <code>true</code> if the handler is gone or has moved on from the request, e.g.
+         * to another coordinator
+         */
+        boolean isStale() {
+            final PermissionsEngine h = handler.get();
+            final PermissionRequest r = request.get();
+
+            return null == h || null == r || !h.isCurrent(PermissionsCoordinator.this, r);
+        }
+
+        void deliver(final String[] allPermissions, final int[] allResults) {
+            final PermissionsEngine h = handler.get();
+
+            // the handler may have aborted the request and started another with the same code
+            if (null == h || isStale())
+                return;
+
+            final int count = Math.min(allPermissions.length, allResults.length);
+            final List<String> mine = new ArrayList<>(permissions.size());
+            final int[] results = new int[count];
+
+            for (int i = 0; i < count; i++) {
+                if (!permissions.contains(allPermissions[i]))
+                    continue;
+
+                results[mine.size()] = allResults[i];
+                mine.add(allPermissions[i]);
+            }
+
+            final int[] myResults = new int[mine.size()];
+            System.arraycopy(results, 0, myResults, 0, myResults.length);
+
+            h.deliverResults(code, mine.toArray(new String[mine.size()]), myResults);
+        }
+    }
+}
@@ -0,0 +1,867 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The platform independent part of a permissions handler: request queueing, the rationale
+ * decision, and reconciling system results with what was asked for. Everything platform specific
+ * sits behind the {@link PermissionsChecker} (the host), {@link RationaleDialog},
+ * {@link PermissionsListener}, and, via the {@link PermissionsCoordinator}, {@link Scheduler}
+ * ports.
+ * <p>
+ * Each request moves through an explicit state machine
+ * (<code>IDLE &rarr; CHECKING &rarr; RATIONALE &rarr; AWAITING_RESULT &rarr; IDLE</code>) held in
+ * an atomic reference. Transitions are compare-and-set, so no lock is held while listener
+ * callbacks or the rationale dialog run and {@link #abort()} never waits on them.
+ * <p>
+ * High priority requests are started before low priority ones. A low priority request that
+ * needs the user is parked in the <code>DEFERRED</code> state until the coordinator finds the
+ * host idle, and steps back into the queue if a high priority request comes along meanwhile.
+ * <p>
+ * {@link #check(int, String...)}, {@link #request(String...)}, and the grant queries may be called
+ * from any thread. Requests queued off the main thread are started on it.
+ */
+final class PermissionsEngine {
+    private static final PermissionsLog LOG = PermissionsLog.tag("PermissionsEngine");
+
+    private static final int MAX_QUEUED_REQUESTS = 16;
+
+    /**
+     * Result code for a granted permission. Same as Android's
+     * <code>PackageManager.PERMISSION_GRANTED</code>.
+     */
+    static final int GRANTED = 0;
+
+    /**
+     * Result code for a denied permission. Same as Android's
+     * <code>PackageManager.PERMISSION_DENIED</code>.
+     */
+    static final int DENIED = -1;
+
+    /**
+     * Request codes from <code>0xff00</code> through <code>0xffff</code> are used by
+     * {@link #request(String...)}
+     */
+    static final int FIRST_PROMISE_REQUEST_CODE = 0xff00;
+
+    /**
+     * Priority of requests the app can't do without, e.g. for its first screen. The default.
+     */
+    static final int PRIORITY_HIGH = 1;
+
+    /**
+     * Priority of optional requests. Those wait until the host is idle before asking the user.
+     */
+    static final int PRIORITY_LOW = 0;
+
+    private static final AtomicInteger PROMISE_REQUEST_CODES = new AtomicInteger();
+
+    private static volatile PermissionsMetrics metrics;
+
+    private final PermissionsChecker checker;
+    private final Scheduler mainThread;
+    // only ever changed on the main thread
+    private volatile PermissionsCoordinator coordinator;
+    private final PermissionGroups groups;
+    private final PermissionsListener listener;
+    private final RationaleDialog rationaleDialog;
+
+    private final Queue<PermissionRequest> urgentRequests = new ConcurrentLinkedQueue<>();
+    private final Queue<PermissionRequest> queuedRequests = new ConcurrentLinkedQueue<>();
+    // a deferred request that stepped aside for a high priority one. It goes before the queue.
+    private final AtomicReference<PermissionRequest> preempted = new AtomicReference<>();
+    private final AtomicInteger queuedCount = new AtomicInteger();
+
+    private final AtomicReference<Flow> flow = new AtomicReference<>(Flow.IDLE);
+
+    // checks, rationale dialogs, and system requests only ever start on the main thread
+    private final Runnable startQueued = new Runnable() {
+        @Override
+        public void run() {
+            startNext();
+        }
+    };
+
+    private final Runnable startUrgent = new Runnable() {
+        @Override
+        public void run() {
+            preemptDeferred();
+            startNext();
+        }
+    };
+
+    private final Runnable abortAll = new Runnable() {
+        @Override
+        public void run() {
+            abort();
+        }
+    };
+
+    /**
+     * @param permissionsChecker     the host
+     * @param mainThreadScheduler    starts requests queued off the main thread on it. May be
+     *                               <code>null</code> to start them on the calling thread.
+     * @param permissionsCoordinator merges system requests with other engines of the same host.
+     *                               May be <code>null</code>.
+     * @param permissionGroups       the device's permission groups, for predicting same-group
+     *                               grants. May be <code>null</code>.
+     * @param permissionsListener    receives results of requests without a promise
+     * @param dialog                 shows the rationale
+     */
+    PermissionsEngine(@NonNull final PermissionsChecker permissionsChecker,
+                      @Nullable final Scheduler mainThreadScheduler,
+                      @Nullable final PermissionsCoordinator permissionsCoordinator,
+                      @Nullable final PermissionGroups permissionGroups,
+                      @NonNull final PermissionsListener permissionsListener,
+                      @NonNull final RationaleDialog dialog) {
+        checker = permissionsChecker;
+        mainThread = mainThreadScheduler;
+        coordinator = permissionsCoordinator;
+        groups = permissionGroups;
+        listener = permissionsListener;
+        rationaleDialog = dialog;
+    }
+
+    /**
+     * Report to another coordinator from now on, e.g. that of the activity a retained host has
+     * just been attached to. The request in progress goes along; one that was about to go out
+     * goes out through the new coordinator. Main thread only.
+     *
+     * @param c the coordinator. May be <code>null</code>.
+     */
+    void setCoordinator(@Nullable final PermissionsCoordinator c) {
+        final PermissionsCoordinator old = coordinator;
+
+        if (old == c)
+            return;
+
+        // whatever the old one still knows of this engine's request is stale from here on
+        if (null != old)
+            old.cancel(this);
+
+        coordinator = c;
+
+        final Flow current = flow.get();
+
+        if (null != c && null != current.request)
+            rejoin(c, current.request, current.state);
+    }
+
+    static void setMetrics(@Nullable final PermissionsMetrics listener) {
+        metrics = listener;
+    }
+
+    /**
+     * Queue a high priority request. Asking again for exactly what the current request is asking
+     * for does nothing.
+     */
+    void check(final int requestCode, @NonNull final String... permissions) {
+        check(requestCode, PRIORITY_HIGH, permissions);
+    }
+
+    /**
+     * Queue a request with the given priority, {@link #PRIORITY_HIGH} or {@link #PRIORITY_LOW}
+     */
+    void check(final int requestCode, final int priority, @NonNull final String... permissions) {
+        if (permissions.length == 0)
+            throw new IllegalArgumentException("No permissions");
+
+        LOG.d("Received request %d for %d permissions", requestCode, permissions.length);
+        final PermissionRequest request = new PermissionRequest(requestCode, permissions);
+        request.priority = priority;
+
+        if (request.sameAs(flow.get().request)) {
+            LOG.d("Request %d is already in progress", requestCode);
+            return;
+        }
+
+        enqueue(request);
+    }
+
+    /**
+     * Queue a request whose results go to the returned promise rather than the listener
+     */
+    PermissionPromise request(@NonNull final String... permissions) {
+        if (permissions.length == 0)
+            throw new IllegalArgumentException("No permissions");
+
+        final int requestCode = FIRST_PROMISE_REQUEST_CODE
+                | (PROMISE_REQUEST_CODES.getAndIncrement() & 0xff);
+        final PermissionPromise promise = new PermissionPromise(permissions);
+
+        LOG.d("Received promised request %d for %d permissions", requestCode, permissions.length);
+        enqueue(new PermissionRequest(requestCode, promise, permissions));
+        return promise;
+    }
+
+    private void enqueue(@NonNull final PermissionRequest request) {
+        if (queuedCount.incrementAndGet() > MAX_QUEUED_REQUESTS) {
+            queuedCount.decrementAndGet();
+            throw new IllegalStateException("Too many queued requests");
+        }
+
+        final Runnable start;
+
+        if (request.priority >= PRIORITY_HIGH) {
+            urgentRequests.add(request);
+            start = startUrgent;
+        } else {
+            queuedRequests.add(request);
+            start = startQueued;
+        }
+
+        if (null == mainThread || mainThread.isMainThread())
+            start.run();
+        else
+            mainThread.post(start);
+    }
+
+    /**
+     * @return <code>true</code> if <code>permission</code> is granted. Safe from any thread.
+     */
+    boolean isGranted(@NonNull final String permission) {
+        return GrantCache.isGranted(permission) || checker.permissionIsGranted(permission);
+    }
+
+    /**
+     * @return the granted subset of <code>permissions</code>. Safe from any thread.
+     */
+    Set<String> granted(@NonNull final Set<String> permissions) {
+        return Collections.unmodifiableSet(checker.grantedPermissions(permissions));
+    }
+
+    /**
+     * Put a deferred request back at the head of the queue so that a high priority one can go
+     * first. It hasn't shown anything to the user yet.
+     */
+    private void preemptDeferred() {
+        final Flow current = flow.get();
+
+        if (current.state != State.DEFERRED || !flow.compareAndSet(current, Flow.IDLE))
+            return;
+
+        LOG.d("Request %d steps aside for a high priority request", current.request.code);
+
+        if (null != coordinator)
+            coordinator.withdraw(current.request);
+
+        // only the current request can be preempted, and none goes from the queue while it waits
+        queuedCount.incrementAndGet();
+        preempted.set(current.request);
+    }
+
+    /**
+     * Start the next queued request unless one is already in progress. Queued requests whose
+     * permissions have been granted in the mean time complete without a trip to the system.
+     */
+    private void startNext() {
+        while (flow.compareAndSet(Flow.IDLE, Flow.CLAIMED)) {
+            PermissionRequest next = urgentRequests.poll();
+
+            if (null == next)
+                next = preempted.getAndSet(null);
+
+            if (null == next)
+                next = queuedRequests.poll();
+
+            if (null != next) {
+                queuedCount.decrementAndGet();
+
+                // fails only if abort() took the claim, after next was out of the queue it drained
+                if (flow.compareAndSet(Flow.CLAIMED, new Flow(State.CHECKING, next)))
+                    start(next);
+                else
+                    completed(next, true);
+                return;
+            }
+
+            flow.compareAndSet(Flow.CLAIMED, Flow.IDLE);
+
+            // something may have been queued while we held the claim
+            if (urgentRequests.isEmpty() && null == preempted.get() && queuedRequests.isEmpty())
+                return;
+        }
+    }
+
+    private void start(@NonNull final PermissionRequest request) {
+        final PermissionsMetrics m = metrics;
+        final long checkStart = null == m ? 0 : System.nanoTime();
+
+        resolveUndeclared(request);
+        checkGrants(request);
+        resolvePermanentDenials(request);
+
+        if (null != m)
+            m.onGrantsChecked(request.code, System.nanoTime() - checkStart);
+
+        if (request.isSatisfied()) {
+            if (transition(request, State.CHECKING, State.IDLE)) {
+                if (request.hasGrants())
+                    permissionsGranted(request, request.granted());
+
+                completed(request, false);
+                startNext();
+            }
+            return;
+        }
+
+        if (request.hasGrants())
+            permissionsGranted(request, request.granted());
+
+        final PermissionsCoordinator c = coordinator;
+
+        if (null != c) {
+            if (!c.admit(this, request)) {
+                LOG.d("Deferring request %d until the host is idle", request.code);
+
+                if (!transition(request, State.CHECKING, State.DEFERRED))
+                    c.done(request);
+                return;
+            }
+
+            // the listener may have aborted it when told about the grants, before it was admitted
+            if (flow.get().request != request) {
+                c.done(request);
+                return;
+            }
+        }
+
+        LOG.d("Request %d needs to request %d permissions", request.code, request.pendingSize());
+        final Set<String> showRationaleFor = rationaleFor(request);
+
+        if (showRationaleFor.isEmpty()) {
+            LOG.d("Not showing a rationale dialog for %d permissions", showRationaleFor.size());
+
+            if (transition(request, State.CHECKING, State.AWAITING_RESULT))
+                requestPermission(request, request.pending());
+        } else {
+            LOG.d("Need a rationale dialog for %d permissions", showRationaleFor.size());
+
+            request.rationale = showRationaleFor;
+
+            if (transition(request, State.CHECKING, State.RATIONALE))
+                showRationale(request, showRationaleFor);
+        }
+    }
+
+    /**
+     * Carry on with a request the coordinator deferred, now that the host is idle. Its grants are
+     * checked again: another request may have got them in the mean time.
+     *
+     * @return <code>false</code> if the request is no longer deferred, i.e. it was aborted or
+     * preempted
+     */
+    boolean resume(@NonNull final PermissionRequest request) {
+        if (!transition(request, State.DEFERRED, State.CHECKING))
+            return false;
+
+        LOG.d("Resuming deferred request %d", request.code);
+        start(request);
+        return true;
+    }
+
+    /**
+     * Move <code>request</code> from one state to another.
+     *
+     * @return <code>false</code> if <code>request</code> is no longer in the <code>from</code>
+     * state, i.e. it was aborted.
+     */
+    private boolean transition(@NonNull final PermissionRequest request,
+                               @NonNull final State from,
+                               @NonNull final State to) {
+        final Flow current = flow.get();
+
+        return current.request == request
+                && current.state == from
+                && flow.compareAndSet(current, to == State.IDLE ? Flow.IDLE : new Flow(to, request));
+    }
+
+    private void requestPermission(@NonNull final PermissionRequest request,
+                                   @NonNull final Set<String> permissions) {
+        request.checkerCalls++;
+
+        if (null == coordinator)
+            checker.requestPermission(request.code, permissions);
+        else
+            coordinator.requestPermission(this, request, permissions);
+    }
+
+    /**
+     * Register a request in progress with coordinator <code>c</code>
+     */
+    private void rejoin(@NonNull final PermissionsCoordinator c,
+                        @NonNull final PermissionRequest request,
+                        @NonNull final State state) {
+        switch (state) {
+            case DEFERRED:
+                if (c.admit(this, request))
+                    resume(request);
+                break;
+            case AWAITING_RESULT:
+                if (!c.restored(this, request)) {
+                    c.join(this, request);
+                    c.requestPermission(this, request, request.pending());
+                }
+                break;
+            default:
+                c.join(this, request);
+        }
+    }
+
+    /**
+     * Send a (merged) request to the system on the coordinator's behalf
+     */
+    void requestFromSystem(final int systemCode, @NonNull final Set<String> permissions) {
+        checker.requestPermission(systemCode, permissions);
+    }
+
+    /**
+     * @return <code>true</code> if <code>request</code> is still in progress here and this
+     * engine still reports to <code>c</code>
+     */
+    boolean isCurrent(@NonNull final PermissionsCoordinator c, @NonNull final PermissionRequest request) {
+        return c == coordinator && flow.get().request == request;
+    }
+
+    /**
+     * The system denies permissions missing from the manifest without asking the user. Settle
+     * those here rather than after a round trip, and say why.
+     */
+    private void resolveUndeclared(@NonNull final PermissionRequest request) {
+        final Set<String> declared = checker.declaredPermissions();
+
+        if (null == declared)
+            return;
+
+        Set<String> undeclared = null;
+
+        for (int id = request.nextPending(0); id >= 0; id = request.nextPending(id + 1)) {
+            final String perm = PermissionIds.name(id);
+
+            if (declared.contains(perm))
+                continue;
+
+            if (null == undeclared)
+                undeclared = new HashSet<>();
+
+            undeclared.add(perm);
+        }
+
+        if (null == undeclared)
+            return;
+
+        LOG.d("%d permissions of request %d are not in the manifest: %s", undeclared.size(), request.code, undeclared);
+
+        if (null == request.promise)
+            listener.onPermissionsUndeclared(request.code, undeclared);
+        else
+            request.promise.undeclared(undeclared);
+
+        request.deniesReported += undeclared.size();
+        request.remove(undeclared);
+    }
+
+    private void checkGrants(@NonNull final PermissionRequest request) {
+        // the system would only confirm what the groups already tell
+        if (null != groups && groups.grantsWholeGroup())
+            for (int id = request.nextPending(0); id >= 0; id = request.nextPending(id + 1))
+                if (groups.groupGranted(PermissionIds.name(id), request))
+                    request.granted(id);
+
+        if (!request.hasPending())
+            return;
+
+        request.checkerCalls++;
+
+        for (final String perm : checker.grantedPermissions(request.pending())) {
+            request.granted(perm);
+            PermanentDenials.granted(perm);
+        }
+    }
+
+    /**
+     * The system denies permissions the user said never to ask for again without showing
+     * anything. Deny those here rather than after a round trip. Grants were checked first, so one
+     * made in the settings since is not missed.
+     */
+    private void resolvePermanentDenials(@NonNull final PermissionRequest request) {
+        Set<String> denied = null;
+
+        for (int id = request.nextPending(0); id >= 0; id = request.nextPending(id + 1)) {
+            final String perm = PermissionIds.name(id);
+
+            if (!PermanentDenials.isDenied(perm))
+                continue;
+
+            if (null == denied)
+                denied = new HashSet<>();
+
+            denied.add(perm);
+        }
+
+        if (null == denied)
+            return;
+
+        LOG.d("%d permissions of request %d are denied for good: %s", denied.size(), request.code, denied);
+        permissionsDeclined(request, denied);
+    }
+
+    /**
+     * A denied permission the system wanted a rationale for before the request and no longer does
+     * was denied for good. One that wanted none may just have had its dialog dismissed, which
+     * leaves the flag unset as well on Android 11 and later.
+     */
+    private void recordPermanentDenials(@NonNull final PermissionRequest request) {
+        final Set<String> before = request.rationale;
+
+        if (null == before)
+            return;
+
+        Set<String> candidates = null;
+
+        for (final String perm : request.denied()) {
+            if (!before.contains(perm))
+                continue;
+
+            if (null == candidates)
+                candidates = new HashSet<>();
+
+            candidates.add(perm);
+        }
+
+        if (null == candidates)
+            return;
+
+        request.checkerCalls++;
+        final Set<String> after = checker.shouldShowRationaleDialog(candidates);
+
+        for (final String perm : candidates)
+            if (!after.contains(perm))
+                PermanentDenials.denied(perm);
+    }
+
+    /**
+     * Permissions whose group is granted are granted without a dialog when requested, so they need
+     * no rationale, and the system need not be asked whether they do.
+     */
+    private Set<String> rationaleFor(@NonNull final PermissionRequest request) {
+        final Set<String> ask = null == groups ? request.pending() : groups.ungrantedGroups(request);
+
+        if (ask.isEmpty())
+            return Collections.emptySet();
+
+        request.checkerCalls++;
+        return checker.shouldShowRationaleDialog(ask);
+    }
+
+    /**
+     * Aborts the current request if one is in progress and drops all queued requests. A rationale
+     * that is showing is dismissed.
+     * <p>
+     * May be called from any thread. Promises and the coordinator are only ever touched on the
+     * main thread, so calls made off it abort once the main thread gets to it.
+     */
+    void abort() {
+        if (null != mainThread && !mainThread.isMainThread()) {
+            mainThread.post(abortAll);
+            return;
+        }
+
+        PermissionRequest queued;
+        while (null != (queued = urgentRequests.poll())
+                || null != (queued = preempted.getAndSet(null))
+                || null != (queued = queuedRequests.poll())) {
+            queuedCount.decrementAndGet();
+            completed(queued, true);
+        }
+
+        if (null != coordinator)
+            coordinator.cancel(this);
+
+        final Flow aborted = flow.getAndSet(Flow.IDLE);
+
+        if (null == aborted.request) {
+            LOG.d("Not aborting anything: No current request.");
+        } else {
+            LOG.d("Aborting request %d", aborted.request.code);
+            completed(aborted.request, true);
+
+            if (aborted.state == State.RATIONALE)
+                rationaleDialog.dismissed(aborted.request.code);
+        }
+
+        // in case a concurrent check() queued a request as we were clearing the queue
+        startNext();
+    }
+
+    private void permissionsGranted(@NonNull final PermissionRequest request,
+                                    @NonNull final Set<String> granted) {
+        LOG.d("%d permissions granted for request %d (%d permissions pending): %s", granted.size(), request.code, request.pendingSize(), granted);
+
+        if (null == request.promise)
+            listener.onPermissionsGranted(request.code, granted);
+        else
+            request.promise.granted(granted);
+
+        request.grantsReported += granted.size();
+        request.remove(granted);
+    }
+
+    private void permissionsDeclined(@NonNull final PermissionRequest request,
+                                     @NonNull final Set<String> declined) {
+        LOG.d("%d permissions declined for request %d: %s", declined.size(), request.code, declined);
+
+        if (null == request.promise)
+            listener.onPermissionDeclined(request.code, declined);
+        else
+            request.promise.denied(declined);
+
+        request.deniesReported += declined.size();
+        request.remove(declined);
+    }
+
+    private void completed(@NonNull final PermissionRequest request, final boolean aborted) {
+        if (null != coordinator)
+            coordinator.done(request);
+
+        final PermissionsMetrics m = metrics;
+
+        if (null != m)
+            m.onRequestFinished(request.code,
+                    request.checkerCalls,
+                    request.grantsReported,
+                    request.deniesReported,
+                    aborted);
+
+        if (null != request.promise)
+            request.promise.complete(aborted);
+    }
+
+    /**
+     * @return the current request and its state, e.g. to save it
+     */
+    Flow current() {
+        return flow.get();
+    }
+
+    /**
+     * Pick up a request saved from a previous process. A rationale dialog that was showing is
+     * shown again. A request that was saved before it went out to the system goes out again.
+     *
+     * @return <code>false</code> if another request is already in progress
+     */
+    boolean restore(@NonNull final PermissionRequest request, @NonNull final State state) {
+        if (!flow.compareAndSet(Flow.IDLE, new Flow(state, request))) {
+            LOG.d("Not restoring request %d: another request is in progress", request.code);
+            return false;
+        }
+
+        LOG.d("Restored request %d in state %s", request.code, state);
+
+        final PermissionsCoordinator c = coordinator;
+
+        if (null != c)
+            rejoin(c, request, state);
+
+        if (state == State.RATIONALE)
+            showRationale(request, null == request.rationale ? request.pending() : request.rationale);
+
+        return true;
+    }
+
+    /**
+     * Show the rationale again if it is up, e.g. because the dialog went away with its window
+     */
+    void reshowRationale() {
+        final Flow current = flow.get();
+
+        if (current.state == State.RATIONALE)
+            showRationale(current.request, current.request.rationale);
+    }
+
+    /**
+     * Results from the system. With a coordinator, the system request code leads to the engines
+     * that took part, this one or not, and the results are split up amongst them. Results the
+     * coordinator does not know, e.g. because they reached a recreated host, are taken by the
+     * current request if it went out with that code. Results for other request codes are ignored.
+     *
+     * @param requestCode  request code
+     * @param permissions  permissions asked for
+     * @param grantResults {@link #GRANTED} or not, per permission
+     */
+    void onRequestPermissionsResult(final int requestCode,
+                                    final String[] permissions,
+                                    final int[] grantResults) {
+        if (null == coordinator) {
+            deliverResults(requestCode, permissions, grantResults);
+            return;
+        }
+
+        if (coordinator.dispatch(requestCode, permissions, grantResults))
+            return;
+
+        final PermissionRequest request = flow.get().request;
+
+        if (null == request || request.systemCode != requestCode)
+            return;
+
+        // a merged request also carries results for others
+        final Set<String> mine = request.pending();
+        final int count = Math.min(permissions.length, grantResults.length);
+        final List<String> asked = new ArrayList<>(mine.size());
+        final int[] results = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            if (!mine.contains(permissions[i]))
+                continue;
+
+            results[asked.size()] = grantResults[i];
+            asked.add(permissions[i]);
+        }
+
+        deliverResults(request.code, asked.toArray(new String[asked.size()]), Arrays.copyOf(results, asked.size()));
+    }
+
+    void deliverResults(final int requestCode,
+                        final String[] permissions,
+                        final int[] grantResults) {
+        final PermissionRequest request = flow.get().request;
+
+        if (null == request
+                || request.code != requestCode
+                || !transition(request, State.AWAITING_RESULT, State.IDLE))
+            return;
+
+        final PermissionsMetrics m = metrics;
+
+        if (null != m)
+            m.onSystemResult(requestCode, System.nanoTime() - request.createdAt);
+
+        if (permissions.length != grantResults.length) {
+            completed(request, true);
+            startNext();
+            throw new IllegalStateException("grantResults size does not match that of permissions");
+        }
+
+        for (int i = 0; i < permissions.length; i++) {
+            if (grantResults[i] == GRANTED) {
+                GrantCache.granted(permissions[i]);
+                PermanentDenials.granted(permissions[i]);
+                request.granted(permissions[i]);
+            } else
+                request.denied(permissions[i]);
+        }
+
+        if (request.hasDenies())
+            recordPermanentDenials(request);
+
+        try {
+            if (request.hasGrants()) {
+                permissionsGranted(request, request.granted());
+            }
+
+            if (request.hasDenies()) {
+                permissionsDeclined(request, request.denied());
+            }
+
+            completed(request, false);
+        } finally {
+            startNext();
+        }
+    }
+
+    private void showRationale(@NonNull final PermissionRequest request,
+                               @NonNull final Set<String> permissions) {
+        final int rc = request.code;
+
+        rationaleDialog.show(rc, permissions, new RationaleDialog.Answer() {
+            @Override
+            public void accepted() {
+                // everything still missing goes out in one system request, not only what needed
+                // explaining
+                if (transition(request, State.RATIONALE, State.AWAITING_RESULT))
+                    requestPermission(request, request.pending());
+
+                rationaleDialog.dismissed(rc);
+            }
+
+            @Override
+            public void declined() {
+                LOG.d("Permission dialog declined for %s", permissions);
+                final boolean declined = transition(request, State.RATIONALE, State.IDLE);
+
+                // nothing goes to the system, so whatever it would have asked for is declined too
+                if (declined) {
+                    permissionsDeclined(request, request.pending());
+                    completed(request, false);
+                }
+
+                rationaleDialog.dismissed(rc);
+
+                // only move on once the listener is done with this dialog
+                if (declined)
+                    startNext();
+            }
+        });
+
+        final PermissionsMetrics m = metrics;
+
+        if (null != m)
+            m.onRationaleShown(rc, System.nanoTime() - request.createdAt);
+    }
+
+    enum State {
+        IDLE,
+        CHECKING,
+        DEFERRED,
+        RATIONALE,
+        AWAITING_RESULT
+    }
+
+    /**
+     * Immutable (state, request) pair. A new instance is swapped in on every transition.
+     */
+    static final class Flow {
+        static final Flow IDLE = new Flow(State.IDLE, null);
+        // momentarily held by whoever is picking the next request off the queue
+        static final Flow CLAIMED = new Flow(State.CHECKING, null);
+
+        final State state;
+        final PermissionRequest request;
+
+        Flow(final State s, final PermissionRequest r) {
+            state = s;
+            request = r;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.Set;
+
+/**
+ * Receives the outcome of requests made without a {@link PermissionPromise}
+ */
+interface PermissionsListener {
+    void onPermissionsGranted(final int requestCode, @NonNull final Set<String> granted);
+
+    void onPermissionDeclined(final int requestCode, @NonNull final Set<String> declined);
+
+    /**
+     * Permissions missing from the manifest, resolved without asking the system
+     */
+    void onPermissionsUndeclared(final int requestCode, @NonNull final Set<String> undeclared);
+}
@@ -0,0 +1,149 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logging facade for the library. Debug logging is off unless enabled via
+ * <code>PermissionsHandler.setDebugLogging(boolean)</code> or, on Android,
+ * <code>adb shell setprop log.tag.rtpermissions DEBUG</code> (read once). The primitive overloads
+ * mean a disabled call allocates nothing: no varargs array, no boxing. Enabled calls hand the
+ * arguments to a background thread which does the formatting.
+ * <p>
+ * Messages go to a {@link Sink}: <code>java.util.logging</code> unless the platform installs its
+ * own.
+ */
+final class PermissionsLog {
+    private static volatile boolean debug = false;
+
+    private static volatile Sink sink = new Sink() {
+        @Override
+        public void d(@NonNull final String tag, @NonNull final String message) {
+            Logger.getLogger(tag).fine(message);
+        }
+
+        @Override
+        public void e(@NonNull final String tag, final Throwable t, @NonNull final String message) {
+            Logger.getLogger(tag).log(Level.SEVERE, message, t);
+        }
+    };
+
+    private final String tag;
+
+    private PermissionsLog(final String logTag) {
+        tag = logTag;
+    }
+
+    static PermissionsLog tag(@NonNull final String tag) {
+        return new PermissionsLog(tag);
+    }
+
+    static void setDebug(final boolean enabled) {
+        debug = enabled;
+    }
+
+    static void setSink(@NonNull final Sink logSink) {
+        sink = logSink;
+    }
+
+    void d(final String message) {
+        if (debug)
+            post(message);
+    }
+
+    void d(final String format, final int a) {
+        if (debug)
+            post(format, a);
+    }
+
+    void d(final String format, final int a, final int b) {
+        if (debug)
+            post(format, a, b);
+    }
+
+    void d(final String format, final int a, final int b, final int c) {
+        if (debug)
+            post(format, a, b, c);
+    }
+
+    void d(final String format, final Object a) {
+        if (debug)
+            post(format, a);
+    }
+
+    void d(final String format, final int a, final Object b) {
+        if (debug)
+            post(format, a, b);
+    }
+
+    void d(final String format, final int a, final int b, final Object c) {
+        if (debug)
+            post(format, a, b, c);
+    }
+
+    void d(final String format, final int a, final int b, final int c, final Object d) {
+        if (debug)
+            post(format, a, b, c, d);
+    }
+
+    /**
+     * Errors are rare and always logged, right away.
+     */
+    void e(final Throwable t, final String message) {
+        sink.e(tag, t, message);
+    }
+
+    private void post(final String format, final Object... args) {
+        Writer.EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                sink.d(tag, String.format(Locale.US, format, args));
+            }
+        });
+    }
+
+    interface Sink {
+        void d(@NonNull final String tag, @NonNull final String message);
+
+        void e(@NonNull final String tag, final Throwable t, @NonNull final String message);
+    }
+
+    /**
+     * Lazy holder: the thread only exists once something is logged
+     */
+    private static final class Writer {
+        static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable r) {
+                final Thread thread = new Thread(r, "rtpermissions-log");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+}
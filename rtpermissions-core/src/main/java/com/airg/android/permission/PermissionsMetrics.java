@@ -0,0 +1,66 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+/**
+ * Receives timing and outcome events for permission requests. Register an implementation with
+ * <code>PermissionsHandler.setMetrics(PermissionsMetrics)</code>; see {@link HistogramMetrics} for a
+ * ready-made one. Callbacks are made inline on the thread driving the request (usually the main
+ * thread), so keep them cheap. All durations are in nanoseconds.
+ */
+public interface PermissionsMetrics {
+    /**
+     * The grant state of a request's permissions has been read
+     *
+     * @param requestCode request code
+     * @param elapsed     time spent reading the grant state
+     */
+    void onGrantsChecked(final int requestCode, final long elapsed);
+
+    /**
+     * The rationale dialog is up
+     *
+     * @param requestCode request code
+     * @param sinceCheck  time since the request was made
+     */
+    void onRationaleShown(final int requestCode, final long sinceCheck);
+
+    /**
+     * The system delivered its result
+     *
+     * @param requestCode request code
+     * @param sinceCheck  time since the request was made
+     */
+    void onSystemResult(final int requestCode, final long sinceCheck);
+
+    /**
+     * The request is done
+     *
+     * @param requestCode  request code
+     * @param checkerCalls number of calls made to the system on behalf of the request
+     * @param granted      number of permissions reported granted
+     * @param denied       number of permissions reported denied
+     * @param aborted      <code>true</code> if the request was aborted
+     */
+    void onRequestFinished(final int requestCode,
+                           final int checkerCalls,
+                           final int granted,
+                           final int denied,
+                           final boolean aborted);
+}
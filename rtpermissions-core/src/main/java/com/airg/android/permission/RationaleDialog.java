@@ -0,0 +1,58 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.Set;
+
+/**
+ * Explains to the user why permissions are needed before the system asks for them
+ */
+interface RationaleDialog {
+    /**
+     * Show the rationale. Once the user decides, call one of <code>answer</code>'s methods.
+     *
+     * @param requestCode request code
+     * @param permissions permissions that need explaining
+     * @param answer      where the user's decision goes
+     */
+    void show(final int requestCode,
+              @NonNull final Set<String> permissions,
+              @NonNull final Answer answer);
+
+    /**
+     * The user's decision has been acted upon. Called before the next queued request starts.
+     *
+     * @param requestCode request code
+     */
+    void dismissed(final int requestCode);
+
+    interface Answer {
+        /**
+         * Go ahead and ask the system
+         */
+        void accepted();
+
+        /**
+         * Don't ask. The permissions are reported declined.
+         */
+        void declined();
+    }
+}
@@ -1,34 +1,41 @@
-/*
- * ****************************************************************************
- *   Copyright  2016 airG Inc.                                                 *
- *                                                                             *
- *   Licensed under the Apache License, Version 2.0 (the "License");           *
- *   you may not use this file except in compliance with the License.          *
- *   You may obtain a copy of the License at                                   *
- *                                                                             *
- *       http://www.apache.org/licenses/LICENSE-2.0                            *
- *                                                                             *
- *   Unless required by applicable law or agreed to in writing, software       *
- *   distributed under the License is distributed on an "AS IS" BASIS,         *
- *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
- *   See the License for the specific language governing permissions and       *
- *   limitations under the License.                                            *
- * ***************************************************************************
- */
-
-package com.airg.android.permission;
-
-import android.support.annotation.NonNull;
-
-import java.util.Set;
-
-/**
- * Checks for permissions
- */
-interface PermissionsChecker {
-    boolean permissionIsGranted(@NonNull final String permission);
-
-    Set<String> shouldShowRationaleDialog(@NonNull final Set<String> permissions);
-
-    void requestPermission(final int requestCode, @NonNull final Set<String> permissions);
-}
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Runs work on the host's main thread
+ */
+interface Scheduler {
+    /**
+     * Run <code>task</code> once the message currently being handled is done
+     */
+    void post(@NonNull final Runnable task);
+
+    /**
+     * Run <code>task</code> once the main thread has nothing else to do
+     */
+    void postIdle(@NonNull final Runnable task);
+
+    /**
+     * @return <code>true</code> if called on the host's main thread
+     */
+    boolean isMainThread();
+}
@@ -0,0 +1,46 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The process-wide grant cache
+ */
+public class GrantCacheTest {
+    @Test
+    public void grantIsRemembered() {
+        final String permission = "test.permission.grant.remembered";
+
+        assertFalse(GrantCache.isGranted(permission));
+        GrantCache.granted(permission);
+        assertTrue(GrantCache.isGranted(permission));
+    }
+
+    @Test
+    public void grantIsOnlyRememberedForItsOwnPermission() {
+        GrantCache.granted("test.permission.grant.one");
+
+        assertFalse(GrantCache.isGranted("test.permission.grant.other"));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Bucketing and aggregation of {@link HistogramMetrics}
+ */
+public class HistogramMetricsTest {
+    @Test
+    public void samplesGoToPowerOfTwoMicrosecondBuckets() {
+        final HistogramMetrics.Histogram histogram = new HistogramMetrics().grantChecks();
+
+        histogram.record(999);
+        histogram.record(-5);
+        histogram.record(micros(1));
+        histogram.record(micros(2) - 1);
+        histogram.record(micros(2));
+        histogram.record(micros(4) - 1);
+        histogram.record(micros(4));
+
+        assertEquals(2, histogram.count(0));
+        assertEquals(2, histogram.count(1));
+        assertEquals(2, histogram.count(2));
+        assertEquals(1, histogram.count(3));
+        assertEquals(7, histogram.total());
+    }
+
+    @Test
+    public void longSamplesGoToTheLastBucket() {
+        final HistogramMetrics.Histogram histogram = new HistogramMetrics().grantChecks();
+        final int last = HistogramMetrics.Histogram.BUCKETS - 1;
+
+        histogram.record(TimeUnit.HOURS.toNanos(1));
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(2, histogram.count(last));
+        assertEquals(Long.MAX_VALUE, HistogramMetrics.Histogram.upperBoundMicros(last));
+        assertEquals(1L << (last - 1), HistogramMetrics.Histogram.upperBoundMicros(last - 1));
+    }
+
+    @Test
+    public void percentilesReportTheBucketBound() {
+        final HistogramMetrics.Histogram histogram = new HistogramMetrics().grantChecks();
+        assertEquals(0, histogram.percentileMicros(50));
+
+        for (int i = 0; i < 9; i++)
+            histogram.record(micros(1));
+
+        histogram.record(micros(1000));
+
+        assertEquals(2, histogram.percentileMicros(50));
+        assertEquals(2, histogram.percentileMicros(90));
+        assertEquals(1024, histogram.percentileMicros(95));
+        assertEquals(1024, histogram.percentileMicros(100));
+    }
+
+    @Test
+    public void finishedRequestsAddUp() {
+        final HistogramMetrics metrics = new HistogramMetrics();
+
+        metrics.onRequestFinished(1, 2, 1, 0, false);
+        metrics.onRequestFinished(2, 3, 0, 2, true);
+
+        assertEquals(2, metrics.requests());
+        assertEquals(5, metrics.checkerCalls());
+        assertEquals(1, metrics.granted());
+        assertEquals(2, metrics.denied());
+        assertEquals(1, metrics.aborted());
+    }
+
+    private static long micros(final long micros) {
+        return TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+}
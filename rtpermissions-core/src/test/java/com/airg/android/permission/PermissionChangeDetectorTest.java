@@ -0,0 +1,129 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Changes made outside of requests, against a {@link SimulatedPermissionsChecker}
+ */
+public class PermissionChangeDetectorTest {
+    private static final String A = "test.permission.change.a";
+    private static final String B = "test.permission.change.b";
+
+    private SimulatedPermissionsChecker device;
+    private PermissionChangeDetector detector;
+
+    @Before
+    public void setUp() {
+        device = new SimulatedPermissionsChecker(new TestLooper());
+        detector = new PermissionChangeDetector(device);
+    }
+
+    @Test
+    public void nothingIsReportedWithoutChanges() {
+        final Recorder recorder = new Recorder();
+        device.grant(A);
+        detector.watch(recorder, Collections.singleton(A));
+
+        detector.refresh();
+
+        assertTrue(recorder.events.isEmpty());
+    }
+
+    @Test
+    public void listenersHearOnlyOfTheirOwnPermissions() {
+        final Recorder first = new Recorder();
+        final Recorder second = new Recorder();
+        device.grant(B);
+        detector.watch(first, Collections.singleton(A));
+        detector.watch(second, Collections.singleton(B));
+
+        device.grant(A);
+        detector.refresh();
+
+        assertEquals(singletonList("granted [" + A + "] revoked []"), first.events);
+        assertTrue(second.events.isEmpty());
+
+        device.revoke(A, B);
+        detector.refresh();
+
+        assertEquals(asList("granted [" + A + "] revoked []", "granted [] revoked [" + A + "]"), first.events);
+        assertEquals(singletonList("granted [] revoked [" + B + "]"), second.events);
+    }
+
+    @Test
+    public void outcomeObservedElsewhereIsNotReportedAgain() {
+        final Recorder recorder = new Recorder();
+        detector.watch(recorder, Collections.singleton(A));
+
+        device.grant(A);
+        detector.observed(Collections.singleton(A), true);
+        detector.refresh();
+
+        assertTrue(recorder.events.isEmpty());
+    }
+
+    @Test
+    public void listenerMayStopWatchingWhenTold() {
+        final Recorder other = new Recorder();
+        final Recorder leaving = new Recorder() {
+            @Override
+            public void onPermissionsChanged(@NonNull final Set<String> granted,
+                                             @NonNull final Set<String> revoked) {
+                super.onPermissionsChanged(granted, revoked);
+                detector.unwatch(this);
+            }
+        };
+        detector.watch(leaving, Collections.singleton(A));
+        detector.watch(other, Collections.singleton(A));
+
+        device.grant(A);
+        detector.refresh();
+        device.revoke(A);
+        detector.refresh();
+
+        assertEquals(singletonList("granted [" + A + "] revoked []"), leaving.events);
+        assertEquals(2, other.events.size());
+    }
+
+    private static class Recorder implements PermissionChangeListener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onPermissionsChanged(@NonNull final Set<String> granted, @NonNull final Set<String> revoked) {
+            events.add("granted " + new TreeSet<>(granted) + " revoked " + new TreeSet<>(revoked));
+        }
+    }
+}
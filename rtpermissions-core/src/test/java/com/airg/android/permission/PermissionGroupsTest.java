@@ -0,0 +1,83 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Group grants per API level. Grants are taken from the request, not the process-wide cache.
+ */
+public class PermissionGroupsTest {
+    private static final String FINE = "android.permission.ACCESS_FINE_LOCATION";
+    private static final String COARSE = "android.permission.ACCESS_COARSE_LOCATION";
+    private static final String PHONE_STATE = "android.permission.READ_PHONE_STATE";
+    private static final String CALL_LOG = "android.permission.READ_CALL_LOG";
+    private static final String CAMERA = "android.permission.CAMERA";
+
+    @Test
+    public void wholeGroupIsGrantedBeforeO() {
+        assertTrue(PermissionGroups.forApi(25).grantsWholeGroup());
+        assertFalse(PermissionGroups.forApi(26).grantsWholeGroup());
+    }
+
+    @Test
+    public void grantedSiblingCoversThePermission() {
+        final PermissionGroups groups = PermissionGroups.forApi(26);
+        final PermissionRequest request = new PermissionRequest(1, FINE, COARSE, CAMERA);
+
+        assertFalse(groups.groupGranted(FINE, request));
+
+        request.granted(COARSE);
+
+        assertTrue(groups.groupGranted(FINE, request));
+        assertFalse(groups.groupGranted(CAMERA, request));
+        assertEquals(Collections.singleton(CAMERA), groups.ungrantedGroups(request));
+    }
+
+    @Test
+    public void callLogLeavesThePhoneGroupInP() {
+        final PermissionRequest request = new PermissionRequest(1, PHONE_STATE, CALL_LOG);
+        request.granted(PHONE_STATE);
+
+        assertTrue(PermissionGroups.forApi(27).groupGranted(CALL_LOG, request));
+        assertFalse(PermissionGroups.forApi(28).groupGranted(CALL_LOG, request));
+    }
+
+    @Test
+    public void permissionsOutsideTheTableAreNeverCovered() {
+        final PermissionRequest request = new PermissionRequest(1, "test.permission.groups", CAMERA);
+        request.granted(CAMERA);
+
+        assertFalse(PermissionGroups.forApi(26).groupGranted("test.permission.groups", request));
+    }
+
+    @Test
+    public void laterApiLevelsAreNotModelled() {
+        assertNull(PermissionGroups.forApi(29));
+        assertNull(PermissionGroups.forApi(31));
+    }
+}
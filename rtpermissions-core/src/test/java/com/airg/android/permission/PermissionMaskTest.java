@@ -0,0 +1,128 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Masks of permission ids, on both sides of the 64 ids that fit the <code>long</code>
+ */
+public class PermissionMaskTest {
+    @Test
+    public void idsPastTheLongSpillOver() {
+        final PermissionMask mask = new PermissionMask();
+
+        mask.set(3);
+        mask.set(63);
+        mask.set(64);
+        mask.set(200);
+
+        assertTrue(mask.get(63));
+        assertTrue(mask.get(64));
+        assertTrue(mask.get(200));
+        assertFalse(mask.get(65));
+        assertEquals(4, mask.size());
+
+        mask.clear(64);
+        assertFalse(mask.get(64));
+        assertEquals(3, mask.size());
+    }
+
+    @Test
+    public void nextWalksBothHalves() {
+        final PermissionMask mask = mask(1, 63, 64, 130);
+
+        assertEquals(1, mask.next(0));
+        assertEquals(63, mask.next(2));
+        assertEquals(64, mask.next(64));
+        assertEquals(130, mask.next(65));
+        assertEquals(-1, mask.next(131));
+        assertEquals(-1, new PermissionMask().next(0));
+    }
+
+    @Test
+    public void setOperationsCoverTheOverflow() {
+        final PermissionMask mask = mask(1, 70, 80);
+
+        mask.or(mask(2, 90));
+        assertEquals(mask(1, 2, 70, 80, 90), mask);
+
+        mask.andNot(mask(1, 80));
+        assertEquals(mask(2, 70, 90), mask);
+
+        mask.and(mask(2, 90, 100));
+        assertEquals(mask(2, 90), mask);
+
+        mask.and(mask(2));
+        assertEquals(mask(2), mask);
+    }
+
+    @Test
+    public void emptiedOverflowEqualsNone() {
+        final PermissionMask spilled = mask(5, 100);
+        spilled.clear(100);
+
+        assertEquals(mask(5), spilled);
+        assertEquals(mask(5).hashCode(), spilled.hashCode());
+        assertTrue(mask(100).copy().get(100));
+    }
+
+    @Test
+    public void requestKeepsTrackOfMoreThan64Permissions() {
+        final String[] permissions = new String[70];
+
+        for (int i = 0; i < permissions.length; i++)
+            permissions[i] = "test.permission.mask" + i;
+
+        final PermissionRequest request = new PermissionRequest(1, permissions);
+        final String last = permissions[permissions.length - 1];
+        assertTrue(PermissionIds.of(last) >= Long.SIZE);
+
+        request.granted(last);
+        request.denied(permissions[0]);
+
+        assertEquals(68, request.pendingSize());
+        assertEquals(Collections.singleton(last), request.granted());
+        assertFalse(request.isPending(last));
+
+        final Set<String> walked = new HashSet<>();
+        for (int id = request.nextPending(0); id >= 0; id = request.nextPending(id + 1))
+            walked.add(PermissionIds.name(id));
+
+        assertEquals(request.pending(), walked);
+    }
+
+    private static PermissionMask mask(final int... ids) {
+        final PermissionMask mask = new PermissionMask();
+
+        for (final int id : ids)
+            mask.set(id);
+
+        return mask;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Continuations, and promises chained from them
+ */
+public class PermissionPromiseTest {
+    @Test
+    public void continuationsRunInTheOrderAdded() {
+        final PermissionPromise promise = new PermissionPromise("a");
+        final List<String> ran = new ArrayList<>();
+
+        promise.then(record(ran, "first"));
+        promise.then(record(ran, "second"));
+        promise.complete(false);
+        promise.then(record(ran, "late"));
+
+        assertEquals(asList("first", "second", "late"), ran);
+    }
+
+    @Test
+    public void thenCompletesOnceTheCallbackHasRun() {
+        final PermissionPromise promise = new PermissionPromise("a");
+        final List<String> ran = new ArrayList<>();
+
+        final PermissionPromise next = promise.then(record(ran, "callback"));
+        assertFalse(next.isDone());
+
+        next.then(record(ran, "after"));
+        promise.granted(Collections.singleton("a"));
+        promise.complete(false);
+
+        assertTrue(next.isDone());
+        assertEquals(asList("callback", "after"), ran);
+    }
+
+    @Test
+    public void thenRequestCompletesWithTheNextStep() {
+        final PermissionPromise first = new PermissionPromise("a");
+        final PermissionPromise second = new PermissionPromise("b");
+        final PermissionResult[] result = new PermissionResult[1];
+
+        final PermissionPromise chained = first.thenRequest(new PermissionPromise.Step() {
+            @Override
+            public PermissionPromise onResult(@NonNull final PermissionResult r) {
+                return second;
+            }
+        });
+        chained.then(new PermissionPromise.Callback() {
+            @Override
+            public void onResult(@NonNull final PermissionResult r) {
+                result[0] = r;
+            }
+        });
+
+        first.granted(Collections.singleton("a"));
+        first.complete(false);
+        assertFalse(chained.isDone());
+
+        second.denied(Collections.singleton("b"));
+        second.complete(false);
+        assertTrue(chained.isDone());
+        assertEquals(Collections.singleton("b"), result[0].denied());
+    }
+
+    @Test
+    public void thenRequestWithoutNextStepCompletesWithThisResult() {
+        final PermissionPromise first = new PermissionPromise("a");
+        final PermissionResult[] results = new PermissionResult[2];
+
+        final PermissionPromise chained = first.then(new PermissionPromise.Callback() {
+            @Override
+            public void onResult(@NonNull final PermissionResult r) {
+                results[0] = r;
+            }
+        }).thenRequest(new PermissionPromise.Step() {
+            @Override
+            public PermissionPromise onResult(@NonNull final PermissionResult r) {
+                results[1] = r;
+                return null;
+            }
+        });
+
+        first.complete(true);
+        assertTrue(chained.isDone());
+        assertSame(results[0], results[1]);
+    }
+
+    @Test
+    public void throwingContinuationDoesNotHoldUpTheOthers() {
+        final PermissionPromise promise = new PermissionPromise("a");
+        final List<String> ran = new ArrayList<>();
+
+        final PermissionPromise failed = promise.then(new PermissionPromise.Callback() {
+            @Override
+            public void onResult(@NonNull final PermissionResult result) {
+                throw new IllegalStateException("broken continuation");
+            }
+        });
+        promise.then(record(ran, "second"));
+        failed.then(record(ran, "after the broken one"));
+
+        promise.complete(false);
+
+        assertTrue(failed.isDone());
+        assertEquals(asList("after the broken one", "second"), ran);
+    }
+
+    private static PermissionPromise.Callback record(@NonNull final List<String> ran, @NonNull final String name) {
+        return new PermissionPromise.Callback() {
+            @Override
+            public void onResult(@NonNull final PermissionResult result) {
+                ran.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.airg.android.permission.SimulatedPermissionsChecker.Answer.DENY;
+import static com.airg.android.permission.SimulatedPermissionsChecker.Answer.DENY_DONT_ASK_AGAIN;
+import static com.airg.android.permission.SimulatedPermissionsChecker.Answer.DISMISS;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Complete flows through engines and their coordinator against a
+ * {@link SimulatedPermissionsChecker}, with a {@link TestLooper} for the main thread
+ */
+public class PermissionsEngineTest {
+    // grants are cached process wide, so every test asks for permissions of its own
+    private static final AtomicInteger PERMISSIONS = new AtomicInteger();
+
+    private TestLooper main;
+    private SimulatedPermissionsChecker device;
+    private PermissionsCoordinator coordinator;
+
+    // the permissions of each system request, as their results come back
+    private final List<List<String>> asked = new ArrayList<>();
+    // the engine the host hands results to
+    private PermissionsEngine host;
+
+    @Before
+    public void setUp() {
+        PermanentDenials.clear();
+        main = new TestLooper();
+        device = deliverToHost(new SimulatedPermissionsChecker(main));
+        coordinator = new PermissionsCoordinator(main);
+    }
+
+    @After
+    public void tearDown() {
+        PermanentDenials.clear();
+    }
+
+    @Test
+    public void queuedRequestsGoOneAtATime() {
+        final String a = permission("a");
+        final String b = permission("b");
+        final Recorder recorder = new Recorder();
+        final PermissionsEngine engine = engine(recorder);
+
+        engine.check(1, a);
+        engine.check(2, b);
+
+        // the first request goes out. The second waits for its results.
+        main.runOne();
+        assertEquals(1, device.systemRequests());
+        assertEquals(PermissionsEngine.State.AWAITING_RESULT, engine.current().state);
+        assertEquals(1, engine.current().request.code);
+
+        main.runAll();
+        assertEquals(asList(singletonList(a), singletonList(b)), asked);
+        assertEquals(asList("granted 1 " + set(a), "granted 2 " + set(b)), recorder.events);
+    }
+
+    @Test
+    public void requestsOfOneHostGoOutTogether() {
+        final String a = permission("a");
+        final String b = permission("b");
+        final Recorder first = new Recorder();
+        final Recorder second = new Recorder();
+
+        engine(first).check(1, a);
+        engine(second).check(2, b);
+        main.runAll();
+
+        assertEquals(1, device.systemRequests());
+        assertEquals(singletonList("granted 1 " + set(a)), first.events);
+        assertEquals(singletonList("granted 2 " + set(b)), second.events);
+    }
+
+    @Test
+    public void resultsNobodyWaitsForDoNotHoldUpTheNextRequest() {
+        final String a = permission("a");
+        final String b = permission("b");
+
+        // results never come back, e.g. because they went to a recreated host
+        device = deliverToHost(new SimulatedPermissionsChecker(new TestLooper()));
+
+        final PermissionsEngine first = engine(new Recorder());
+        first.check(1, a);
+        main.runAll();
+        first.abort();
+
+        engine(new Recorder()).check(2, b);
+        main.runAll();
+
+        assertEquals(2, device.systemRequests());
+    }
+
+    @Test
+    public void resultsOfAnAbortedRequestDoNotCompleteItsSuccessor() {
+        final String a = permission("a");
+        final String b = permission("b");
+        final String x = permission("x");
+        final Recorder first = new Recorder();
+        final Recorder second = new Recorder();
+        final PermissionsEngine reused = engine(first);
+
+        reused.check(1, a);
+        engine(second).check(2, b);
+
+        while (device.systemRequests() == 0)
+            assertTrue(main.runOne());
+
+        // same request code, other permissions, while the merged request is still out
+        reused.abort();
+        reused.check(1, x);
+        main.runAll();
+
+        assertEquals(2, device.systemRequests());
+        assertEquals(singletonList(singletonList(x)), asked.subList(1, asked.size()));
+        assertEquals(singletonList("granted 1 " + set(x)), first.events);
+        assertEquals(singletonList("granted 2 " + set(b)), second.events);
+    }
+
+    @Test
+    public void requestGoesAlongToTheNextCoordinator() {
+        final String a = permission("a");
+        final Recorder recorder = new Recorder();
+        final PermissionsEngine engine = engine(recorder);
+
+        // not sent yet when the host is recreated
+        engine.check(1, a);
+        engine.setCoordinator(new PermissionsCoordinator(main));
+        main.runAll();
+
+        assertEquals(1, device.systemRequests());
+        assertEquals(singletonList("granted 1 " + set(a)), recorder.events);
+    }
+
+    @Test
+    public void restoredRequestTakesResultsFromBeforeTheRestart() {
+        final String a = permission("a");
+        final Recorder recorder = new Recorder();
+        final PermissionsEngine engine = engine(recorder);
+        final PermissionRequest saved = new PermissionRequest(5, a);
+        saved.systemCode = PermissionsCoordinator.FIRST_CODE + 7;
+
+        assertTrue(engine.restore(saved, PermissionsEngine.State.AWAITING_RESULT));
+        engine.onRequestPermissionsResult(saved.systemCode, new String[]{a}, new int[]{PermissionsEngine.GRANTED});
+        main.runAll();
+
+        assertEquals(0, device.systemRequests());
+        assertEquals(singletonList("granted 5 " + set(a)), recorder.events);
+    }
+
+    @Test
+    public void restoredRequestThatNeverWentOutGoesOutAgain() {
+        final String a = permission("a");
+        final Recorder recorder = new Recorder();
+        final PermissionsEngine engine = engine(recorder);
+
+        assertTrue(engine.restore(new PermissionRequest(5, a), PermissionsEngine.State.AWAITING_RESULT));
+        main.runAll();
+
+        assertEquals(1, device.systemRequests());
+        assertEquals(singletonList("granted 5 " + set(a)), recorder.events);
+    }
+
+    @Test
+    public void restoredRationaleIsShownAgain() {
+        final String a = permission("a");
+        final Recorder recorder = new Recorder();
+        final PermissionsEngine engine = engine(recorder);
+        final PermissionRequest saved = new PermissionRequest(5, a);
+        saved.rationale = Collections.singleton(a);
+
+        assertTrue(engine.restore(saved, PermissionsEngine.State.RATIONALE));
+        main.runAll();
+
+        assertEquals(asList("rationale 5 " + set(a), "granted 5 " + set(a)), recorder.events);
+    }
+
+    @Test
+    public void decliningTheRationaleDeclinesEverythingStillMissing() {
+        final String a = permission("a");
+        final String b = permission("b");
+        final Recorder recorder = new Recorder();
+        recorder.declineRationale = true;
+
+        // only a needs explaining, but b would have gone to the system along with it
+        device.rationale(true, a);
+        engine(recorder).check(1, a, b);
+        main.runAll();
+
+        assertEquals(0, device.systemRequests());
+        assertEquals(asList("rationale 1 " + set(a), "declined 1 " + set(a, b)), recorder.events);
+    }
+
+    @Test
+    public void permissionsMissingFromTheManifestNeverGoToTheSystem() {
+        final String declared = permission("declared");
+        final String undeclared = permission("undeclared");
+        final Recorder recorder = new Recorder();
+        final PermissionsEngine engine = engine(recorder);
+
+        device.declare(declared);
+        engine.check(1, declared, undeclared);
+        main.runAll();
+
+        assertEquals(singletonList(singletonList(declared)), asked);
+        assertEquals(asList("undeclared 1 " + set(undeclared), "granted 1 " + set(declared)), recorder.events);
+
+        // nothing left to ask for
+        engine.check(2, undeclared);
+        main.runAll();
+
+        assertEquals(1, device.systemRequests());
+        assertEquals("undeclared 2 " + set(undeclared), recorder.events.get(2));
+    }
+
+    @Test
+    public void lowPriorityRequestWaitsUntilTheHostIsIdle() {
+        final String a = permission("a");
+        final String b = permission("b");
+        final Recorder optional = new Recorder();
+        final PermissionsEngine deferred = engine(optional);
+
+        deferred.check(1, PermissionsEngine.PRIORITY_LOW, a);
+        engine(new Recorder()).check(2, b);
+
+        main.runBusy();
+        assertEquals(PermissionsEngine.State.DEFERRED, deferred.current().state);
+        assertEquals(singletonList(singletonList(b)), asked);
+        assertTrue(optional.events.isEmpty());
+
+        main.runAll();
+        assertEquals(asList(singletonList(b), singletonList(a)), asked);
+        assertEquals(singletonList("granted 1 " + set(a)), optional.events);
+    }
+
+    @Test
+    public void highPriorityRequestGoesBeforeDeferredOne() {
+        final String a = permission("a");
+        final String b = permission("b");
+        final Recorder recorder = new Recorder();
+        final PermissionsEngine engine = engine(recorder);
+
+        engine.check(1, PermissionsEngine.PRIORITY_LOW, a);
+        assertEquals(PermissionsEngine.State.DEFERRED, engine.current().state);
+
+        engine.check(2, b);
+        main.runAll();
+
+        assertEquals(asList(singletonList(b), singletonList(a)), asked);
+        assertEquals(asList("granted 2 " + set(b), "granted 1 " + set(a)), recorder.events);
+    }
+
+    @Test
+    public void requestAbortedWhenToldOfGrantsDoesNotHoldUpDeferredOnes() {
+        final String a = permission("a");
+        final String b = permission("b");
+        final String c = permission("c");
+        final Recorder aborting = new Recorder();
+        final PermissionsEngine engine = engine(aborting);
+        aborting.abortOnGrant = engine;
+
+        device.grant(a);
+        engine.check(1, a, b);
+        engine(new Recorder()).check(2, PermissionsEngine.PRIORITY_LOW, c);
+        main.runAll();
+
+        assertEquals(PermissionsEngine.State.IDLE, engine.current().state);
+        assertEquals(singletonList(singletonList(c)), asked);
+    }
+
+    @Test
+    public void denialAfterRationaleIsForGood() {
+        final String a = permission("a");
+        final Recorder recorder = new Recorder();
+        final PermissionsEngine engine = engine(recorder);
+
+        device.answer(DENY, a);
+        engine.check(1, a);
+        main.runAll();
+
+        device.answer(DENY_DONT_ASK_AGAIN, a);
+        engine.check(2, a);
+        main.runAll();
+        assertTrue(PermanentDenials.isDenied(a));
+
+        // denied without asking the system
+        engine.check(3, a);
+        main.runAll();
+
+        assertEquals(2, device.systemRequests());
+        assertEquals(asList("declined 1 " + set(a),
+                "rationale 2 " + set(a),
+                "declined 2 " + set(a),
+                "declined 3 " + set(a)), recorder.events);
+    }
+
+    @Test
+    public void dismissedDialogIsNotDenialForGood() {
+        final String a = permission("a");
+        final PermissionsEngine engine = engine(new Recorder());
+
+        device.answer(DISMISS, a);
+        engine.check(1, a);
+        main.runAll();
+        assertFalse(PermanentDenials.isDenied(a));
+
+        // after a rationale, too
+        device.rationale(true, a);
+        engine.check(2, a);
+        main.runAll();
+        assertFalse(PermanentDenials.isDenied(a));
+
+        engine.check(3, a);
+        main.runAll();
+        assertEquals(3, device.systemRequests());
+    }
+
+    private PermissionsEngine engine(@NonNull final Recorder recorder) {
+        final PermissionsEngine engine =
+                new PermissionsEngine(device, main, coordinator, null, recorder, recorder);
+
+        if (null == host)
+            host = engine;
+
+        return engine;
+    }
+
+    private SimulatedPermissionsChecker deliverToHost(@NonNull final SimulatedPermissionsChecker checker) {
+        return checker.deliverTo(new SimulatedPermissionsChecker.Receiver() {
+            @Override
+            public void onRequestPermissionsResult(final int requestCode,
+                                                   @NonNull final String[] permissions,
+                                                   @NonNull final int[] grantResults) {
+                asked.add(Arrays.asList(permissions));
+                host.onRequestPermissionsResult(requestCode, permissions, grantResults);
+            }
+        });
+    }
+
+    private static String permission(@NonNull final String name) {
+        return "test.permission." + name + PERMISSIONS.incrementAndGet();
+    }
+
+    private static String set(@NonNull final String... permissions) {
+        return new TreeSet<>(asList(permissions)).toString();
+    }
+
+    private static final class Recorder implements PermissionsListener, RationaleDialog {
+        final List<String> events = new ArrayList<>();
+
+        PermissionsEngine abortOnGrant;
+        boolean declineRationale;
+
+        @Override
+        public void onPermissionsGranted(final int requestCode, @NonNull final Set<String> granted) {
+            events.add("granted " + requestCode + " " + new TreeSet<>(granted));
+
+            if (null != abortOnGrant)
+                abortOnGrant.abort();
+        }
+
+        @Override
+        public void onPermissionDeclined(final int requestCode, @NonNull final Set<String> declined) {
+            events.add("declined " + requestCode + " " + new TreeSet<>(declined));
+        }
+
+        @Override
+        public void onPermissionsUndeclared(final int requestCode, @NonNull final Set<String> undeclared) {
+            events.add("undeclared " + requestCode + " " + new TreeSet<>(undeclared));
+        }
+
+        @Override
+        public void show(final int requestCode,
+                         @NonNull final Set<String> permissions,
+                         @NonNull final Answer answer) {
+            events.add("rationale " + requestCode + " " + new TreeSet<>(permissions));
+
+            if (declineRationale)
+                answer.declined();
+            else
+                answer.accepted();
+        }
+
+        @Override
+        public void dismissed(final int requestCode) {
+        }
+    }
+}
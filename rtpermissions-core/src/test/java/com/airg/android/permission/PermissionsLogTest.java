@@ -0,0 +1,164 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Logging that is turned off must cost nothing: no allocations, and nothing handed to the writer
+ */
+public class PermissionsLogTest {
+    private static final int CALLS = 100000;
+    private static final String MARKER = "marker";
+
+    @After
+    public void tearDown() {
+        PermissionsLog.setDebug(false);
+    }
+
+    @Test
+    public void disabledLoggingAllocatesNothing() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        PermissionsLog.setDebug(false);
+        final PermissionsLog log = PermissionsLog.tag("PermissionsLogTest");
+        final Object arg = "argument";
+        final long thread = Thread.currentThread().getId();
+
+        logEveryOverload(log, arg);
+
+        final long before = threads.getThreadAllocatedBytes(thread);
+        logEveryOverload(log, arg);
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        // a varargs array or a boxed int per call would be well over a byte each
+        assertTrue(allocated + " bytes allocated", allocated < CALLS);
+    }
+
+    @Test
+    public void checkWithLoggingDisabledLogsNothing() throws InterruptedException {
+        final AtomicInteger logged = new AtomicInteger();
+        final CountDownLatch marked = new CountDownLatch(1);
+
+        PermissionsLog.setSink(new PermissionsLog.Sink() {
+            @Override
+            public void d(@NonNull final String tag, @NonNull final String message) {
+                if (MARKER.equals(message))
+                    marked.countDown();
+                else
+                    logged.incrementAndGet();
+            }
+
+            @Override
+            public void e(@NonNull final String tag, final Throwable t, @NonNull final String message) {
+                logged.incrementAndGet();
+            }
+        });
+        PermissionsLog.setDebug(false);
+
+        final TestLooper main = new TestLooper();
+        final SimulatedPermissionsChecker device = new SimulatedPermissionsChecker(main);
+        final Listener listener = new Listener();
+        final PermissionsEngine engine = new PermissionsEngine(device,
+                main,
+                new PermissionsCoordinator(main),
+                null,
+                listener,
+                listener);
+
+        device.deliverTo(new SimulatedPermissionsChecker.Receiver() {
+            @Override
+            public void onRequestPermissionsResult(final int requestCode,
+                                                   @NonNull final String[] permissions,
+                                                   @NonNull final int[] grantResults) {
+                engine.onRequestPermissionsResult(requestCode, permissions, grantResults);
+            }
+        });
+
+        engine.check(1, "test.permission.LOGGED");
+        main.runAll();
+        assertEquals(1, listener.granted.get());
+
+        // the writer keeps order, so anything logged by the check arrives before the marker
+        PermissionsLog.setDebug(true);
+        PermissionsLog.tag("PermissionsLogTest").d(MARKER);
+        assertTrue(marked.await(5, TimeUnit.SECONDS));
+        assertEquals(0, logged.get());
+    }
+
+    private static void logEveryOverload(@NonNull final PermissionsLog log, @NonNull final Object arg) {
+        for (int i = 0; i < CALLS; i++) {
+            log.d("message");
+            log.d("%d", i);
+            log.d("%d %d", i, i);
+            log.d("%d %d %d", i, i, i);
+            log.d("%s", arg);
+            log.d("%d %s", i, arg);
+            log.d("%d %d %s", i, i, arg);
+            log.d("%d %d %d %s", i, i, i, arg);
+        }
+    }
+
+    private static final class Listener implements PermissionsListener, RationaleDialog {
+        final AtomicInteger granted = new AtomicInteger();
+
+        @Override
+        public void onPermissionsGranted(final int requestCode, @NonNull final Set<String> permissions) {
+            granted.addAndGet(permissions.size());
+        }
+
+        @Override
+        public void onPermissionDeclined(final int requestCode, @NonNull final Set<String> declined) {
+        }
+
+        @Override
+        public void onPermissionsUndeclared(final int requestCode, @NonNull final Set<String> undeclared) {
+        }
+
+        @Override
+        public void show(final int requestCode,
+                         @NonNull final Set<String> permissions,
+                         @NonNull final Answer answer) {
+            answer.accepted();
+        }
+
+        @Override
+        public void dismissed(final int requestCode) {
+        }
+    }
+}
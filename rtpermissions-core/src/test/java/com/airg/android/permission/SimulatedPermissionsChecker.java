@@ -0,0 +1,344 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A device in a box, for tests and load runs on the plain JVM. The user's answers to the system
+ * permission dialog are scripted per permission, every call that would be a binder transaction on
+ * a device takes a configurable amount of time, and results arrive later, on the results
+ * {@link Executor}, like the real thing.
+ * <p>
+ * Behaves like the system: a denied permission gets the rationale flag until the user picks
+ * "don't ask again", after which requests for it are denied without asking and the rationale flag
+ * is cleared. Rationale flags may also be scripted directly. Safe to script from any thread.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+final class SimulatedPermissionsChecker implements PermissionsChecker {
+    /**
+     * What the user does in the system dialog
+     */
+    public enum Answer {
+        GRANT,
+        DENY,
+        DENY_DONT_ASK_AGAIN,
+        /**
+         * The dialog goes away without an answer, e.g. tapped outside of. Denied, and the
+         * rationale flag stays as it was.
+         */
+        DISMISS
+    }
+
+    /**
+     * Where the results go, e.g. the handler's <code>onRequestPermissionsResult</code>
+     */
+    public interface Receiver {
+        void onRequestPermissionsResult(final int requestCode,
+                                        @NonNull final String[] permissions,
+                                        @NonNull final int[] grantResults);
+    }
+
+    private final Executor resultExecutor;
+
+    private final Map<String, Answer> answers = new ConcurrentHashMap<>();
+    private final Set<String> granted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> rationale = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> dontAskAgain = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private volatile Set<String> declared;
+    private volatile Answer defaultAnswer = Answer.GRANT;
+    private volatile Receiver receiver;
+    private volatile long binderLatencyNanos;
+    private volatile long userLatencyNanos;
+
+    private final AtomicLong binderCalls = new AtomicLong();
+    private final AtomicLong systemRequests = new AtomicLong();
+    private final AtomicBoolean manifestRead = new AtomicBoolean();
+
+    /**
+     * @param results runs result delivery, e.g. a single thread standing in for the main thread
+     */
+    public SimulatedPermissionsChecker(@NonNull final Executor results) {
+        resultExecutor = results;
+    }
+
+    /**
+     * @param resultReceiver receives the results of {@link #requestPermission(int, Set)}
+     * @return this checker
+     */
+    public SimulatedPermissionsChecker deliverTo(@NonNull final Receiver resultReceiver) {
+        receiver = resultReceiver;
+        return this;
+    }
+
+    /**
+     * Script the user's answer for some permissions
+     *
+     * @return this checker
+     */
+    public SimulatedPermissionsChecker answer(@NonNull final Answer answer,
+                                              @NonNull final String... permissions) {
+        for (final String permission : permissions)
+            answers.put(permission, answer);
+
+        return this;
+    }
+
+    /**
+     * @param answer the answer for permissions without a scripted one. {@link Answer#GRANT} by
+     *               default.
+     * @return this checker
+     */
+    public SimulatedPermissionsChecker answerOthers(@NonNull final Answer answer) {
+        defaultAnswer = answer;
+        return this;
+    }
+
+    /**
+     * Set the manifest. Until this is called the manifest is unknown and every permission may be
+     * asked for.
+     *
+     * @return this checker
+     */
+    public SimulatedPermissionsChecker declare(@NonNull final String... permissions) {
+        final Set<String> manifest = new HashSet<>();
+        Collections.addAll(manifest, permissions);
+        declared = Collections.unmodifiableSet(manifest);
+        return this;
+    }
+
+    /**
+     * Grant permissions up front, e.g. as if from the system settings
+     *
+     * @return this checker
+     */
+    public SimulatedPermissionsChecker grant(@NonNull final String... permissions) {
+        for (final String permission : permissions) {
+            granted.add(permission);
+            rationale.remove(permission);
+            dontAskAgain.remove(permission);
+        }
+
+        return this;
+    }
+
+    /**
+     * Revoke permissions, e.g. as if from the system settings
+     *
+     * @return this checker
+     */
+    public SimulatedPermissionsChecker revoke(@NonNull final String... permissions) {
+        for (final String permission : permissions)
+            granted.remove(permission);
+
+        return this;
+    }
+
+    /**
+     * Forget everything about permissions, as if the app had just been installed
+     *
+     * @return this checker
+     */
+    public SimulatedPermissionsChecker forget(@NonNull final String... permissions) {
+        for (final String permission : permissions) {
+            granted.remove(permission);
+            rationale.remove(permission);
+            dontAskAgain.remove(permission);
+        }
+
+        return this;
+    }
+
+    /**
+     * Set the rationale flag, i.e. what <code>shouldShowRequestPermissionRationale</code> returns
+     *
+     * @return this checker
+     */
+    public SimulatedPermissionsChecker rationale(final boolean show,
+                                                 @NonNull final String... permissions) {
+        for (final String permission : permissions) {
+            if (show)
+                rationale.add(permission);
+            else
+                rationale.remove(permission);
+        }
+
+        return this;
+    }
+
+    /**
+     * @param latency time each binder call takes
+     * @param unit    unit of <code>latency</code>
+     * @return this checker
+     */
+    public SimulatedPermissionsChecker binderLatency(final long latency, @NonNull final TimeUnit unit) {
+        binderLatencyNanos = unit.toNanos(latency);
+        return this;
+    }
+
+    /**
+     * @param latency time the user takes to answer the system dialog. Spent on the results
+     *                executor.
+     * @param unit    unit of <code>latency</code>
+     * @return this checker
+     */
+    public SimulatedPermissionsChecker userLatency(final long latency, @NonNull final TimeUnit unit) {
+        userLatencyNanos = unit.toNanos(latency);
+        return this;
+    }
+
+    /**
+     * @return number of simulated binder calls so far
+     */
+    public long binderCalls() {
+        return binderCalls.get();
+    }
+
+    /**
+     * @return number of times the system dialog was asked for
+     */
+    public long systemRequests() {
+        return systemRequests.get();
+    }
+
+    @Override
+    public boolean permissionIsGranted(@NonNull final String permission) {
+        binderCall();
+        return granted.contains(permission);
+    }
+
+    @Override
+    public Set<String> grantedPermissions(@NonNull final Set<String> permissions) {
+        binderCall();
+
+        final Set<String> result = new HashSet<>();
+
+        for (final String permission : permissions)
+            if (granted.contains(permission))
+                result.add(permission);
+
+        return result;
+    }
+
+    @Override
+    public Set<String> declaredPermissions() {
+        final Set<String> manifest = declared;
+
+        // read once per process on a device
+        if (null != manifest && manifestRead.compareAndSet(false, true))
+            binderCall();
+
+        return manifest;
+    }
+
+    @Override
+    public Set<String> shouldShowRationaleDialog(@NonNull final Set<String> permissions) {
+        final Set<String> result = new HashSet<>();
+
+        for (final String permission : permissions) {
+            binderCall();
+
+            if (rationale.contains(permission))
+                result.add(permission);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void requestPermission(final int requestCode, @NonNull final Set<String> permissions) {
+        systemRequests.incrementAndGet();
+        binderCall();
+
+        final String[] asked = permissions.toArray(new String[permissions.size()]);
+
+        resultExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sleep(userLatencyNanos);
+
+                final int[] results = new int[asked.length];
+
+                for (int i = 0; i < asked.length; i++)
+                    results[i] = answer(asked[i]);
+
+                final Receiver r = receiver;
+
+                if (null == r)
+                    throw new IllegalStateException("No receiver for request " + requestCode);
+
+                r.onRequestPermissionsResult(requestCode, asked, results);
+            }
+        });
+    }
+
+    private int answer(final String permission) {
+        if (granted.contains(permission))
+            return PermissionsEngine.GRANTED;
+
+        // the system does not ask any more
+        if (dontAskAgain.contains(permission))
+            return PermissionsEngine.DENIED;
+
+        final Answer scripted = answers.get(permission);
+
+        switch (null == scripted ? defaultAnswer : scripted) {
+            case GRANT:
+                grant(permission);
+                return PermissionsEngine.GRANTED;
+            case DENY:
+                rationale.add(permission);
+                return PermissionsEngine.DENIED;
+            case DISMISS:
+                return PermissionsEngine.DENIED;
+            default:
+                dontAskAgain.add(permission);
+                rationale.remove(permission);
+                return PermissionsEngine.DENIED;
+        }
+    }
+
+    private void binderCall() {
+        binderCalls.incrementAndGet();
+        sleep(binderLatencyNanos);
+    }
+
+    private static void sleep(final long nanos) {
+        if (nanos <= 0)
+            return;
+
+        // parkNanos may return early
+        final long deadline = System.nanoTime() + nanos;
+
+        for (long left = nanos; left > 0; left = deadline - System.nanoTime())
+            LockSupport.parkNanos(left);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * A main thread for tests. Nothing runs until the test says so, and then on the test's thread.
+ * Idle tasks run once nothing else is queued.
+ */
+final class TestLooper implements Scheduler, Executor {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Queue<Runnable> idle = new ArrayDeque<>();
+
+    @Override
+    public void post(@NonNull final Runnable task) {
+        tasks.add(task);
+    }
+
+    @Override
+    public void postIdle(@NonNull final Runnable task) {
+        idle.add(task);
+    }
+
+    @Override
+    public boolean isMainThread() {
+        return true;
+    }
+
+    @Override
+    public void execute(@NonNull final Runnable command) {
+        tasks.add(command);
+    }
+
+    /**
+     * Run the next task, if any. Idle tasks don't count.
+     *
+     * @return <code>false</code> if there was none
+     */
+    boolean runOne() {
+        final Runnable task = tasks.poll();
+
+        if (null == task)
+            return false;
+
+        task.run();
+        return true;
+    }
+
+    /**
+     * Run tasks until none are left, but leave idle tasks waiting, as if the host stayed busy
+     */
+    void runBusy() {
+        Runnable task;
+        while (null != (task = tasks.poll()))
+            task.run();
+    }
+
+    /**
+     * Run everything, idle tasks included, until nothing is left
+     */
+    void runAll() {
+        while (true) {
+            runBusy();
+
+            final Runnable task = idle.poll();
+
+            if (null == task)
+                return;
+
+            task.run();
+        }
+    }
+}
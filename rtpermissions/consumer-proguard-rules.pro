@@ -0,0 +1,6 @@
+# Rules applied to apps that use this library.
+
+# Recreated by the FragmentManager by name after process death
+-keep public class com.airg.android.permission.PermissionsFragment {
+    public <init>();
+}
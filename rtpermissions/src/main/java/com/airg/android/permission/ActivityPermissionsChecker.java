@@ -1,77 +1,161 @@
-/*
- * ****************************************************************************
- *   Copyright  2016 airG Inc.                                                 *
- *                                                                             *
- *   Licensed under the Apache License, Version 2.0 (the "License");           *
- *   you may not use this file except in compliance with the License.          *
- *   You may obtain a copy of the License at                                   *
- *                                                                             *
- *       http://www.apache.org/licenses/LICENSE-2.0                            *
- *                                                                             *
- *   Unless required by applicable law or agreed to in writing, software       *
- *   distributed under the License is distributed on an "AS IS" BASIS,         *
- *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
- *   See the License for the specific language governing permissions and       *
- *   limitations under the License.                                            *
- * ***************************************************************************
- */
-
-package com.airg.android.permission;
-
-import android.app.Activity;
-import android.support.annotation.NonNull;
-import android.support.v4.app.ActivityCompat;
-import android.support.v4.content.ContextCompat;
-
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
-
-import static android.content.pm.PackageManager.PERMISSION_GRANTED;
-
-/**
- * For permission handling via activities
- */
-class ActivityPermissionsChecker implements PermissionsChecker {
-    private final Activity activity;
-
-    ActivityPermissionsChecker(final Activity a) {
-        if (null == a)
-            throw new NullPointerException("no activity");
-        activity = a;
-    }
-
-    /**
-     * Determines if the specified permission has been granted
-     * @param permission permission to check
-     * @return <code>true</code> if the calling activity has been granted the specified permission and <code>false</code> otherwise.
-     */
-    public boolean permissionIsGranted(@NonNull final String permission) {
-        return ContextCompat.checkSelfPermission(activity, permission) == PERMISSION_GRANTED;
-    }
-
-    @Override
-    public Set<String> shouldShowRationaleDialog(@NonNull Set<String> permissions) {
-        final Set<String> shouldShowRationaleDialog = new HashSet<>();
-
-        for (final String permission : permissions)
-            if (shouldShowRationaleDialog(permission))
-                shouldShowRationaleDialog.add(permission);
-
-        return Collections.unmodifiableSet(shouldShowRationaleDialog);
-    }
-
-    @Override
-    public void requestPermission(int requestCode, @NonNull Set<String> permissions) {
-        if (permissions.isEmpty())
-            throw new IllegalArgumentException("No permissions specified");
-
-        ActivityCompat.requestPermissions(activity,
-                permissions.toArray(new String[permissions.size()]),
-                requestCode);
-    }
-
-    protected boolean shouldShowRationaleDialog(final String permission) {
-        return ActivityCompat.shouldShowRequestPermissionRationale(activity, permission);
-    }
-}
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.app.ActivityCompat;
+import android.support.v4.content.ContextCompat;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static android.content.pm.PackageManager.PERMISSION_GRANTED;
+
+/**
+ * For permission handling via activities
+ */
+class ActivityPermissionsChecker implements PermissionsChecker {
+    // grants are the package's, so they are read through the application context
+    private final Context context;
+    private final Activity activity;
+
+    ActivityPermissionsChecker(final Activity a) {
+        this(a, a);
+    }
+
+    /**
+     * For hosts that look up their activity themselves (see {@link #activity()}). Only the
+     * application context of <code>host</code> is kept.
+     *
+     * @param a    the activity or <code>null</code>
+     * @param host current activity of the host
+     */
+    ActivityPermissionsChecker(@Nullable final Activity a, final Activity host) {
+        if (null == host)
+            throw new NullPointerException("no activity");
+        context = host.getApplicationContext();
+        activity = a;
+    }
+
+    /**
+     * Determines if the specified permission has been granted. Known grants are served from the
+     * {@link GrantCache} without going back to the system.
+     * @param permission permission to check
+     * @return <code>true</code> if the calling activity has been granted the specified permission and <code>false</code> otherwise.
+     */
+    public boolean permissionIsGranted(@NonNull final String permission) {
+        if (GrantCache.isGranted(permission))
+            return true;
+
+        if (ContextCompat.checkSelfPermission(context, permission) != PERMISSION_GRANTED)
+            return false;
+
+        GrantCache.granted(permission);
+        return true;
+    }
+
+    /**
+     * Determines which of the specified permissions have been granted. Anything not already in the
+     * {@link GrantCache} is answered by a single package manager call rather than one
+     * {@link ContextCompat#checkSelfPermission} per permission.
+     * @param permissions permissions to check
+     * @return the granted subset of <code>permissions</code>
+     */
+    @Override
+    public Set<String> grantedPermissions(@NonNull final Set<String> permissions) {
+        final Set<String> granted = new HashSet<>();
+        boolean missing = false;
+
+        for (final String permission : permissions) {
+            if (GrantCache.isGranted(permission))
+                granted.add(permission);
+            else
+                missing = true;
+        }
+
+        if (!missing)
+            return granted;
+
+        try {
+            PackageGrants.cache(context);
+        } catch (PackageManager.NameNotFoundException e) {
+            // can't read our own package?! Ask one by one.
+            for (final String permission : permissions)
+                if (permissionIsGranted(permission))
+                    granted.add(permission);
+
+            return granted;
+        }
+
+        for (final String permission : permissions)
+            if (GrantCache.isGranted(permission))
+                granted.add(permission);
+
+        return granted;
+    }
+
+    /**
+     * @return the manifest's permissions, read along with the grant state the first time
+     */
+    @Override
+    public Set<String> declaredPermissions() {
+        try {
+            return PackageGrants.declared(context);
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Set<String> shouldShowRationaleDialog(@NonNull Set<String> permissions) {
+        final Set<String> shouldShowRationaleDialog = new HashSet<>();
+
+        for (final String permission : permissions)
+            if (shouldShowRationaleDialog(permission))
+                shouldShowRationaleDialog.add(permission);
+
+        return Collections.unmodifiableSet(shouldShowRationaleDialog);
+    }
+
+    @Override
+    public void requestPermission(int requestCode, @NonNull Set<String> permissions) {
+        if (permissions.isEmpty())
+            throw new IllegalArgumentException("No permissions specified");
+
+        ActivityCompat.requestPermissions(activity(),
+                permissions.toArray(new String[permissions.size()]),
+                requestCode);
+    }
+
+    protected boolean shouldShowRationaleDialog(final String permission) {
+        return ActivityCompat.shouldShowRequestPermissionRationale(activity(), permission);
+    }
+
+    /**
+     * @return the activity to check permissions against
+     */
+    protected Activity activity() {
+        return activity;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.airg.android.logging.Logger;
+
+/**
+ * Sends the library's log to logcat
+ */
+final class AndroidLogSink implements PermissionsLog.Sink {
+    private static final String PROPERTY_TAG = "rtpermissions";
+
+    private AndroidLogSink() {
+    }
+
+    /**
+     * Route logging to logcat and honour <code>log.tag.rtpermissions</code>
+     */
+    static void install() {
+        PermissionsLog.setSink(new AndroidLogSink());
+        PermissionsLog.setDebug(Log.isLoggable(PROPERTY_TAG, Log.DEBUG));
+    }
+
+    @Override
+    public void d(@NonNull final String tag, @NonNull final String message) {
+        Logger.tag(tag).d("%s", message);
+    }
+
+    @Override
+    public void e(@NonNull final String tag, final Throwable t, @NonNull final String message) {
+        Logger.tag(tag).e(t, "%s", message);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the {@link PermanentDenials} in the app's private {@link SharedPreferences}. The record is
+ * loaded on a background thread at most once per process; until it is, requests simply go to the
+ * system as they would without it.
+ */
+final class DenialPreferences implements PermanentDenials.Storage, Runnable {
+    private static final String PREFERENCES = "com.airg.android.permission.denials";
+    private static final String KEY_DENIED = "denied";
+
+    private static final AtomicBoolean STARTED = new AtomicBoolean(false);
+
+    private final Context context;
+    private SharedPreferences preferences;
+
+    private DenialPreferences(final Context c) {
+        context = c;
+    }
+
+    /**
+     * Start loading the record, unless it has already been started
+     *
+     * @param context any context. The application context is retained.
+     */
+    static void load(@NonNull final Context context) {
+        if (!STARTED.compareAndSet(false, true))
+            return;
+
+        final Thread thread = new Thread(new DenialPreferences(context.getApplicationContext()),
+                "rtpermissions-denials");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        PermanentDenials.restore(preferences.getStringSet(KEY_DENIED, Collections.<String>emptySet()), this);
+    }
+
+    @Override
+    public void save(@NonNull final Set<String> denied) {
+        // apply() writes to disk in the background
+        preferences.edit().putStringSet(KEY_DENIED, denied).apply();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.app.AlertDialog;
+import android.content.DialogInterface;
+import android.support.annotation.NonNull;
+
+import java.util.Set;
+
+/**
+ * A {@link RationalePresenter} that creates its {@link AlertDialog} once and shows the same
+ * instance for every request. Subclasses build the dialog, with its custom view if any, in
+ * {@link #onCreateDialog(DialogInterface.OnClickListener)} and update it per request in
+ * {@link #onBind(AlertDialog, int, Set)}.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public abstract class DialogRationalePresenter
+        implements RationalePresenter, DialogInterface.OnClickListener {
+    private AlertDialog dialog;
+    private Answer answer;
+
+    /**
+     * Build the dialog (e.g. with {@link AlertDialog.Builder#create()}, not <code>show()</code>).
+     * It needs exactly a negative and a positive button. No more, no less.
+     *
+     * @param listener attach to both {@link DialogInterface#BUTTON_POSITIVE} and
+     *                 {@link DialogInterface#BUTTON_NEGATIVE}
+     * @return the dialog
+     */
+    @NonNull
+    protected abstract AlertDialog onCreateDialog(@NonNull final DialogInterface.OnClickListener listener);
+
+    /**
+     * Update the dialog for a request, e.g. show only the explanations for
+     * <code>permissions</code>. Does nothing by default.
+     */
+    protected void onBind(@NonNull final AlertDialog dialog,
+                          final int requestCode,
+                          @NonNull final Set<String> permissions) {
+    }
+
+    @Override
+    public final void show(final int requestCode,
+                           @NonNull final Set<String> permissions,
+                           @NonNull final Answer requestAnswer) {
+        final boolean created = null == dialog;
+
+        if (created) {
+            dialog = onCreateDialog(this);
+            dialog.setCancelable(false);
+        }
+
+        answer = requestAnswer;
+        onBind(dialog, requestCode, permissions);
+        dialog.show();
+
+        // buttons only exist once shown
+        if (created) {
+            if (null == dialog.getButton(AlertDialog.BUTTON_POSITIVE))
+                throw new IllegalStateException("rationale dialog is missing the positive button");
+
+            if (null == dialog.getButton(AlertDialog.BUTTON_NEGATIVE))
+                throw new IllegalStateException("rationale dialog is missing the negative button");
+        }
+    }
+
+    @Override
+    public final void hide() {
+        answer = null;
+
+        if (null != dialog && dialog.isShowing())
+            dialog.dismiss();
+    }
+
+    @Override
+    public final void onClick(final DialogInterface dialogInterface, final int which) {
+        final Answer a = answer;
+
+        if (null == a)
+            return;
+
+        switch (which) {
+            case DialogInterface.BUTTON_POSITIVE:
+                answer = null;
+                a.accepted();
+                break;
+            case DialogInterface.BUTTON_NEGATIVE:
+                answer = null;
+                a.declined();
+                break;
+            default:
+                // nothing
+        }
+    }
+}
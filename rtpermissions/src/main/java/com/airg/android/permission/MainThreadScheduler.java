@@ -0,0 +1,63 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.annotation.NonNull;
+
+/**
+ * {@link Scheduler} backed by the main {@link Looper}
+ */
+final class MainThreadScheduler implements Scheduler {
+    static final MainThreadScheduler INSTANCE = new MainThreadScheduler();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private MainThreadScheduler() {
+    }
+
+    @Override
+    public void post(@NonNull final Runnable task) {
+        handler.post(task);
+    }
+
+    @Override
+    public boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    @Override
+    public void postIdle(@NonNull final Runnable task) {
+        // idle handlers go on the queue of the thread that adds them
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                    @Override
+                    public boolean queueIdle() {
+                        task.run();
+                        return false;
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static android.content.pm.PackageInfo.REQUESTED_PERMISSION_GRANTED;
+import static android.os.Build.VERSION_CODES.JELLY_BEAN;
+
+/**
+ * Reads the grant state of every permission the app declares with a single
+ * {@link PackageManager#getPackageInfo(String, int)} call. The first read also indexes the
+ * declared permissions; the manifest can't change while the process lives.
+ */
+@TargetApi(JELLY_BEAN)
+final class PackageGrants {
+    private static volatile Set<String> declared;
+
+    private PackageGrants() {
+    }
+
+    /**
+     * @param context any context
+     * @return every permission declared in the manifest
+     * @throws PackageManager.NameNotFoundException if the package info could not be read
+     */
+    static Set<String> declared(@NonNull final Context context) throws PackageManager.NameNotFoundException {
+        final Set<String> index = declared;
+
+        if (null != index)
+            return index;
+
+        cache(context);
+        return declared;
+    }
+
+    /**
+     * Record every granted permission declared by the app in the {@link GrantCache}
+     *
+     * @param context any context
+     * @return the number of declared permissions
+     * @throws PackageManager.NameNotFoundException if the package info could not be read
+     */
+    static int cache(@NonNull final Context context) throws PackageManager.NameNotFoundException {
+        final PackageInfo info = context.getPackageManager()
+                .getPackageInfo(context.getPackageName(), PackageManager.GET_PERMISSIONS);
+
+        final String[] requested = info.requestedPermissions;
+        final int[] flags = info.requestedPermissionsFlags;
+
+        if (null == declared)
+            declared = null == requested
+                    ? Collections.<String>emptySet()
+                    : Collections.unmodifiableSet(new HashSet<>(Arrays.asList(requested)));
+
+        if (null == requested || null == flags)
+            return 0;
+
+        for (int i = 0; i < requested.length; i++)
+            if ((flags[i] & REQUESTED_PERMISSION_GRANTED) != 0)
+                GrantCache.granted(requested[i]);
+
+        return requested.length;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Parcels a {@link PermissionRequest} as the request code, the system request code, the requested
+ * permission names, and one state byte per permission, so that a request in flight can be restored after process death.
+ * Promises are not parcelled: whoever was waiting on one is gone with the process.
+ */
+final class ParcelableRequest implements Parcelable {
+    private static final byte STATE_PENDING = 0;
+    private static final byte STATE_GRANTED = 1;
+    private static final byte STATE_DENIED = 2;
+    private static final byte STATE_REPORTED = 3;
+    private static final byte STATE_MASK = 3;
+    private static final byte FLAG_RATIONALE = 4;
+
+    final PermissionRequest request;
+
+    ParcelableRequest(@NonNull final PermissionRequest permissionRequest) {
+        request = permissionRequest;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(final Parcel dest, final int flags) {
+        final Set<String> requested = request.requested();
+        final String[] names = requested.toArray(new String[requested.size()]);
+        final byte[] states = new byte[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            byte state = request.isPending(names[i])
+                    ? STATE_PENDING
+                    : request.isGranted(names[i])
+                    ? STATE_GRANTED
+                    : request.isDenied(names[i]) ? STATE_DENIED : STATE_REPORTED;
+
+            if (null != request.rationale && request.rationale.contains(names[i]))
+                state |= FLAG_RATIONALE;
+
+            states[i] = state;
+        }
+
+        dest.writeInt(request.code);
+        dest.writeInt(request.systemCode);
+        dest.writeStringArray(names);
+        dest.writeByteArray(states);
+    }
+
+    public static final Creator<ParcelableRequest> CREATOR = new Creator<ParcelableRequest>() {
+        @Override
+        public ParcelableRequest createFromParcel(final Parcel source) {
+            final int code = source.readInt();
+            final int systemCode = source.readInt();
+            final String[] names = source.createStringArray();
+            final byte[] states = source.createByteArray();
+
+            final PermissionRequest request = new PermissionRequest(code, names);
+            request.systemCode = systemCode;
+            final Set<String> rationale = new HashSet<>();
+
+            for (int i = 0; i < names.length; i++) {
+                switch (states[i] & STATE_MASK) {
+                    case STATE_GRANTED:
+                        request.granted(names[i]);
+                        break;
+                    case STATE_DENIED:
+                        request.denied(names[i]);
+                        break;
+                    case STATE_REPORTED:
+                        request.remove(names[i]);
+                        break;
+                    default:
+                        // still pending
+                }
+
+                if ((states[i] & FLAG_RATIONALE) != 0)
+                    rationale.add(names[i]);
+            }
+
+            if (!rationale.isEmpty())
+                request.rationale = rationale;
+
+            return new ParcelableRequest(request);
+        }
+
+        @Override
+        public ParcelableRequest[] newArray(final int size) {
+            return new ParcelableRequest[size];
+        }
+    };
+}
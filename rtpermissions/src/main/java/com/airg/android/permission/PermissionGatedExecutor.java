@@ -0,0 +1,265 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs tasks that need permissions once those permissions are granted. Tasks are held until every
+ * permission they need is granted and then handed to the executor as a batch. All tasks submitted
+ * during the same main thread message share a single {@link PermissionsHandler#request(String...)},
+ * and tasks that need permissions already being asked for wait on that request rather than
+ * making another one.
+ * <p>
+ * Tasks whose permissions are denied, or whose request is aborted, are failed together: their {@link Future}s throw a
+ * {@link SecurityException}, and tasks passed to {@link #execute(Runnable, String...)} are
+ * dropped. Denials are not remembered, so a later task asks again.
+ * <p>
+ * Tasks may be submitted from any thread.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class PermissionGatedExecutor {
+    private static final PermissionsLog LOG = PermissionsLog.tag("PermissionGatedExecutor");
+
+    private final PermissionsHandler handler;
+    private final Executor executor;
+
+    // guarded by this
+    private final List<GatedTask<?>> waiting = new ArrayList<>();
+    // permissions asked for by requests that have not completed yet
+    private final Set<String> requested = new HashSet<>();
+    private boolean requestScheduled = false;
+
+    private final Runnable request = new Runnable() {
+        @Override
+        public void run() {
+            request();
+        }
+    };
+
+    private final PermissionPromise.Callback onResult = new PermissionPromise.Callback() {
+        @Override
+        public void onResult(@NonNull final PermissionResult result) {
+            settle(result);
+        }
+    };
+
+    /**
+     * @param permissionsHandler asks for the permissions
+     * @param taskExecutor       runs the tasks once their permissions are granted
+     */
+    public PermissionGatedExecutor(@NonNull final PermissionsHandler permissionsHandler,
+                                   @NonNull final Executor taskExecutor) {
+        handler = permissionsHandler;
+        executor = taskExecutor;
+    }
+
+    /**
+     * Run <code>task</code> once all <code>permissions</code> are granted. It is dropped if any is
+     * denied.
+     *
+     * @param task        the task
+     * @param permissions permissions the task needs
+     * @throws IllegalArgumentException if the permissions list is empty
+     */
+    public void execute(@NonNull final Runnable task, @NonNull final String... permissions) {
+        submit(task, permissions);
+    }
+
+    /**
+     * Run <code>task</code> once all <code>permissions</code> are granted
+     *
+     * @param task        the task
+     * @param permissions permissions the task needs
+     * @return the task's future. Fails with a {@link SecurityException} if a permission is denied.
+     * @throws IllegalArgumentException if the permissions list is empty
+     */
+    public Future<?> submit(@NonNull final Runnable task, @NonNull final String... permissions) {
+        return enqueue(new GatedTask<>(Executors.callable(task), permissions));
+    }
+
+    /**
+     * Run <code>task</code> once all <code>permissions</code> are granted
+     *
+     * @param task        the task
+     * @param permissions permissions the task needs
+     * @return the task's future. Fails with a {@link SecurityException} if a permission is denied.
+     * @throws IllegalArgumentException if the permissions list is empty
+     */
+    public <T> Future<T> submit(@NonNull final Callable<T> task, @NonNull final String... permissions) {
+        return enqueue(new GatedTask<>(task, permissions));
+    }
+
+    /**
+     * Cancel every task still waiting for its permissions, e.g. when the host goes away.
+     * Requests already made are not aborted; use {@link PermissionsHandler#abort()} for that.
+     */
+    public void cancelAll() {
+        final List<GatedTask<?>> cancelled;
+
+        synchronized (this) {
+            cancelled = new ArrayList<>(waiting);
+            waiting.clear();
+        }
+
+        for (final GatedTask<?> task : cancelled)
+            task.cancel(false);
+    }
+
+    private <T> GatedTask<T> enqueue(@NonNull final GatedTask<T> task) {
+        if (task.permissions.isEmpty())
+            throw new IllegalArgumentException("No permissions");
+
+        if (task.isGranted()) {
+            executor.execute(task);
+            return task;
+        }
+
+        synchronized (this) {
+            waiting.add(task);
+
+            if (requested.containsAll(task.permissions) || requestScheduled)
+                return task;
+
+            requestScheduled = true;
+        }
+
+        // one request for everything submitted while handling this message
+        MainThreadScheduler.INSTANCE.post(request);
+        return task;
+    }
+
+    private void request() {
+        final Set<String> missing = new LinkedHashSet<>();
+
+        synchronized (this) {
+            requestScheduled = false;
+
+            for (final GatedTask<?> task : waiting)
+                for (final String permission : task.permissions)
+                    if (!requested.contains(permission) && !GrantCache.isGranted(permission))
+                        missing.add(permission);
+
+            requested.addAll(missing);
+        }
+
+        if (missing.isEmpty()) {
+            // granted while the request was scheduled
+            release(Collections.<String>emptySet());
+            return;
+        }
+
+        LOG.d("Requesting %d permissions for waiting tasks", missing.size());
+        handler.request(missing.toArray(new String[missing.size()])).then(onResult);
+    }
+
+    private void settle(@NonNull final PermissionResult result) {
+        final Set<String> refused = new HashSet<>(result.requested());
+        refused.removeAll(result.granted());
+
+        // not every checker records its grants, e.g. the one used before Android M
+        for (final String permission : result.granted())
+            GrantCache.granted(permission);
+
+        synchronized (this) {
+            requested.removeAll(result.requested());
+        }
+
+        release(refused);
+    }
+
+    /**
+     * Run every waiting task whose permissions are all granted and fail those that need a
+     * <code>refused</code> permission
+     */
+    private void release(@NonNull final Set<String> refused) {
+        final List<GatedTask<?>> ready = new ArrayList<>();
+        final List<GatedTask<?>> failed = new ArrayList<>();
+
+        synchronized (this) {
+            for (int i = 0; i < waiting.size(); i++) {
+                final GatedTask<?> task = waiting.get(i);
+
+                if (task.isGranted())
+                    ready.add(task);
+                else if (!Collections.disjoint(task.permissions, refused))
+                    failed.add(task);
+                else
+                    continue;
+
+                waiting.remove(i--);
+            }
+        }
+
+        if (!failed.isEmpty()) {
+            LOG.d("Failing %d tasks: permissions refused: %s", failed.size(), refused);
+            final SecurityException denied = new SecurityException("Permissions not granted: " + refused);
+
+            for (final GatedTask<?> task : failed)
+                task.fail(denied);
+        }
+
+        if (ready.isEmpty())
+            return;
+
+        LOG.d("Running %d tasks", ready.size());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (final GatedTask<?> task : ready)
+                    task.run();
+            }
+        });
+    }
+
+    private static final class GatedTask<T> extends FutureTask<T> {
+        final Set<String> permissions;
+
+        GatedTask(@NonNull final Callable<T> callable, @NonNull final String... perms) {
+            super(callable);
+            permissions = new HashSet<>(Arrays.asList(perms));
+        }
+
+        boolean isGranted() {
+            for (final String permission : permissions)
+                if (!GrantCache.isGranted(permission))
+                    return false;
+
+            return true;
+        }
+
+        void fail(@NonNull final Throwable t) {
+            setException(t);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+
+/**
+ * A retained, UI-less fragment that owns a {@link PermissionsHandler} on behalf of its host
+ * activity. Permission results are delivered straight to this fragment, so the host need not
+ * relay them, and the in-flight request survives configuration changes as well as process death.
+ * Use {@link PermissionsHandler#attach(FragmentActivity, PermissionHandlerClient)} rather than
+ * adding this fragment yourself.
+ */
+public final class PermissionsFragment extends Fragment {
+    static final String DEFAULT_TAG = "com.airg.android.permission.PermissionsFragment";
+
+    private PermissionsHandler handler;
+
+    // kept until attach() creates the handler after process death
+    private Bundle savedState;
+    private String[] pendingPermissions;
+    private int[] pendingResults;
+    private int pendingRequestCode;
+
+    public PermissionsFragment() {
+        setRetainInstance(true);
+    }
+
+    static PermissionsHandler attach(@NonNull final FragmentActivity activity,
+                                     @NonNull final String tag,
+                                     @NonNull final PermissionHandlerClient client) {
+        final FragmentManager fm = activity.getSupportFragmentManager();
+        PermissionsFragment fragment = (PermissionsFragment) fm.findFragmentByTag(tag);
+
+        if (null == fragment) {
+            fragment = new PermissionsFragment();
+            // no UI and nothing to lose, so state loss is fine
+            fm.beginTransaction().add(fragment, tag).commitNowAllowingStateLoss();
+        }
+
+        return fragment.bind(client);
+    }
+
+    @Override
+    public void onAttach(final Context context) {
+        super.onAttach(context);
+
+        // retained across configuration changes, so this is a new activity
+        if (null != handler)
+            handler.reattach(getActivity());
+    }
+
+    @Override
+    public void onCreate(final Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setRetainInstance(true);
+
+        if (null == handler)
+            savedState = savedInstanceState;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        if (null != handler)
+            handler.onResume();
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull final Bundle outState) {
+        super.onSaveInstanceState(outState);
+
+        if (null != handler)
+            handler.onSaveInstanceState(outState);
+    }
+
+    private PermissionsHandler bind(@NonNull final PermissionHandlerClient client) {
+        if (null != handler) {
+            handler.rebind(client);
+            return handler;
+        }
+
+        handler = PermissionsHandler.headless(this, client);
+        handler.restore(savedState);
+        savedState = null;
+
+        // results that arrived before anyone attached
+        if (null != pendingPermissions) {
+            handler.onRequestPermissionsResult(pendingRequestCode, pendingPermissions, pendingResults);
+            pendingPermissions = null;
+            pendingResults = null;
+        }
+
+        return handler;
+    }
+
+    @Override
+    public void onRequestPermissionsResult(final int requestCode,
+                                           @NonNull final String[] permissions,
+                                           @NonNull final int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+
+        if (null != handler) {
+            handler.onRequestPermissionsResult(requestCode, permissions, grantResults);
+            return;
+        }
+
+        pendingRequestCode = requestCode;
+        pendingPermissions = permissions;
+        pendingResults = grantResults;
+    }
+}
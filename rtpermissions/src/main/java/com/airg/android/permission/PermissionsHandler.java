@@ -1,267 +1,651 @@
-/*
- * ****************************************************************************
- *   Copyright  2016 airG Inc.                                                 *
- *                                                                             *
- *   Licensed under the Apache License, Version 2.0 (the "License");           *
- *   you may not use this file except in compliance with the License.          *
- *   You may obtain a copy of the License at                                   *
- *                                                                             *
- *       http://www.apache.org/licenses/LICENSE-2.0                            *
- *                                                                             *
- *   Unless required by applicable law or agreed to in writing, software       *
- *   distributed under the License is distributed on an "AS IS" BASIS,         *
- *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
- *   See the License for the specific language governing permissions and       *
- *   limitations under the License.                                            *
- * ***************************************************************************
- */
-
-package com.airg.android.permission;
-
-import android.app.Activity;
-import android.app.AlertDialog;
-import android.app.Fragment;
-import android.content.DialogInterface;
-import android.content.pm.PackageManager;
-import android.support.annotation.NonNull;
-
-import com.airg.android.device.ApiLevel;
-import com.airg.android.logging.Logger;
-import com.airg.android.logging.TaggedLogger;
-
-import java.util.Set;
-
-import lombok.AccessLevel;
-import lombok.RequiredArgsConstructor;
-import lombok.Synchronized;
-
-import static android.os.Build.VERSION_CODES.M;
-
-/**
- * This class streamlines all the runtime permissions boilerplate and allows your Activity,
- * Fragment, or Compatibility Fragment to implement the Marshmallow runtime permissions by
- * implementing a simple interface. This implementation is based on a talk that I gave in
- * Vancouver Android Developers group. It is functional, but needs more work.
- * Be sure to relay the results from the
- * {@link Activity#onRequestPermissionsResult(int, String[], int[])},
- * {@link Fragment#onRequestPermissionsResult(int, String[], int[])},
- * or <code>android.support.v4.app.ActivityCompat.OnRequestPermissionsResultCallback#onRequestPermissionsResult(int, String[], int[])</code>
- * to your <code>PermissionsHandler</code> instance.
- */
-@SuppressWarnings({"WeakerAccess", "unused"})
-@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
-public final class PermissionsHandler {
-    private static boolean ANDROID_M = ApiLevel.atLeast(M);
-
-    private static final TaggedLogger LOG = Logger.tag("PermissionsHandler");
-
-    private final PermissionsChecker checker;
-    private final PermissionHandlerClient client;
-
-    private PermissionRequest currentRequest = null;
-
-    /**
-     * For use within an {@link Activity}
-     *
-     * @param activity host Activity.
-     * @param client   A {@link PermissionHandlerClient} implementation
-     * @return An instance of {@link PermissionsHandler} to perform permission checks
-     */
-    public static PermissionsHandler with(@NonNull final Activity activity,
-                                          @NonNull final PermissionHandlerClient client) {
-        if (activity == client)
-            throw new IllegalArgumentException("Activities that implement PermissionHandlerClient can cause the " +
-                    "chain of permission acquisition to break");
-
-        final PermissionsChecker checker = ANDROID_M
-                ? new ActivityPermissionsChecker(activity)
-                : new LegacyPermissionChecker();
-
-        return new PermissionsHandler(checker, client);
-    }
-
-    /**
-     * For use within a native {@link Fragment}
-     *
-     * @param fragment the host Fragment
-     * @param client   A {@link PermissionHandlerClient} implementation
-     * @return An instance of {@link PermissionsHandler} to perform permission checks
-     */
-    public static PermissionsHandler with(@NonNull final Fragment fragment,
-                                          @NonNull final PermissionHandlerClient client) {
-        final PermissionsChecker checker = ANDROID_M
-                ? new FragmentPermissionsChecker(fragment)
-                : new LegacyPermissionChecker();
-
-        return new PermissionsHandler(checker, client);
-    }
-
-    /**
-     * For use within a compat {@link android.support.v4.app.Fragment}
-     *
-     * @param fragment the host Fragment
-     * @param client   A {@link PermissionHandlerClient} implementation
-     * @return An instance of {@link PermissionsHandler} to perform permission checks
-     */
-    public static PermissionsHandler with(@NonNull final android.support.v4.app.Fragment fragment,
-                                          @NonNull final PermissionHandlerClient client) {
-        final PermissionsChecker checker = ANDROID_M
-                ? new CompatFragmentPermissionsChecker(fragment)
-                : new LegacyPermissionChecker();
-
-        return new PermissionsHandler(checker, client);
-    }
-
-    /**
-     * Start permission check.
-     *
-     * @param requestCode A request code for use when checking permissions. Your {@link Activity}
-     * @param permissions permissions to check (constants from {@link android.Manifest.permission}
-     * @throws IllegalStateException if the permissions list is empty or another request is currently in progress. It's a good idea to call {@link PermissionsHandler#abort()} from your <code>onPause()</code> method to abort any unfinished requests.
-     */
-    @Synchronized
-    public void check(final int requestCode, @NonNull final String... permissions) {
-        if (null != currentRequest)
-            throw new IllegalStateException("Another request is already in progress");
-
-        if (permissions.length == 0)
-            throw new IllegalArgumentException("No permissions");
-
-        currentRequest = createRequest(requestCode, permissions);
-        LOG.d("Received request %d for %d permissions", requestCode, permissions.length);
-
-        if (currentRequest.isSatisfied()) {
-            final Set<String> granted = currentRequest.granted();
-            permissionsGranted(granted);
-            currentRequest = null;
-            return;
-        }
-
-        if (currentRequest.hasGrants())
-            permissionsGranted(currentRequest.granted());
-
-        final Set<String> missing = currentRequest.pending();
-
-        LOG.d("Request %d needs to request %d permissions", requestCode, missing.size());
-        final Set<String> showRationaleFor = checker.shouldShowRationaleDialog(missing);
-
-        if (showRationaleFor.isEmpty()) {
-            LOG.d("Not showing a rationale dialog for %d permissions", showRationaleFor.size());
-            checker.requestPermission(currentRequest.code, missing);
-        } else {
-            LOG.d("Need a rationale dialog for %d permissions", showRationaleFor.size());
-            showPermissionRationaleDialog(showRationaleFor);
-        }
-    }
-
-    private PermissionRequest createRequest(final int requestCode, @NonNull final String[] permissions) {
-        final PermissionRequest request = new PermissionRequest(requestCode, permissions);
-
-        for (final String perm : permissions) {
-            if (checker.permissionIsGranted(perm))
-                request.granted(perm);
-        }
-
-        return request;
-    }
-
-    /**
-     * Aborts the current request if one is in progress. If there isn't a
-     */
-    @Synchronized
-    public void abort() {
-        if (null == currentRequest) {
-            LOG.d("Not aborting anything: No current request.");
-            return;
-        }
-
-        LOG.d("Aborting request %d");
-        currentRequest = null;
-    }
-
-    private void permissionsGranted(@NonNull final Set<String> granted) {
-        LOG.d("%d permissions granted for request %d (%d permissions pending): %s", granted.size(), currentRequest.code, currentRequest.pendingSize(), granted);
-        client.onPermissionsGranted(currentRequest.code, granted);
-        currentRequest.remove(granted);
-    }
-
-    private void permissionsDeclined(@NonNull final Set<String> declined) {
-        LOG.d("%d permissions declined for request %d: %s", declined.size(), currentRequest.code, declined);
-        client.onPermissionDeclined(currentRequest.code, declined);
-        currentRequest.remove(declined);
-    }
-
-    /**
-     * Call from your {@link Activity#onRequestPermissionsResult(int, String[], int[])}, {@link Fragment#onRequestPermissionsResult(int, String[], int[])}, or your {@link android.support.v4.app.Fragment#onRequestPermissionsResult(int, String[], int[])}. It is safe to call this method even with request numbers that don't match what was provided to {@link PermissionsHandler#check(int, String...)} as they are simply ignored.
-     * @param requestCode premission check request code
-     * @param permissions list of permissions
-     * @param grantResults list of grant results
-     */
-    @Synchronized
-    public void onRequestPermissionsResult(final int requestCode,
-                                           final String[] permissions,
-                                           final int[] grantResults) {
-        if (null == currentRequest || currentRequest.code != requestCode)
-            return;
-
-        if (permissions.length != grantResults.length) {
-            currentRequest = null;
-            throw new IllegalStateException("grantResults size does not match that of permissions");
-        }
-
-        for (int i = 0; i < permissions.length; i++) {
-            if (grantResults[i] == PackageManager.PERMISSION_GRANTED)
-                currentRequest.granted(permissions[i]);
-            else
-                currentRequest.denied(permissions[i]);
-        }
-
-        try {
-            if (currentRequest.hasGrants()) {
-                permissionsGranted(currentRequest.granted());
-            }
-
-            if (currentRequest.hasDenies()) {
-                permissionsDeclined(currentRequest.denied());
-            }
-        } finally {
-            currentRequest = null;
-        }
-    }
-
-    private void showPermissionRationaleDialog(@NonNull final Set<String> permissions) {
-        final int rc = currentRequest.code;
-
-        final DialogInterface.OnClickListener listener = new DialogInterface.OnClickListener() {
-            @Override
-            public void onClick(final DialogInterface dialog, final int which) {
-                switch (which) {
-                    case DialogInterface.BUTTON_POSITIVE:
-                        checker.requestPermission(currentRequest.code, permissions);
-                        break;
-                    case DialogInterface.BUTTON_NEGATIVE:
-                        LOG.d("Permission dialog declined for %s", permissions);
-                        permissionsDeclined(permissions);
-                        currentRequest = null;
-                        break;
-                    default:
-                        // nothing
-                }
-
-                client.onPermissionRationaleDialogDimissed(rc);
-            }
-        };
-
-        final AlertDialog dialog = client.showPermissionRationaleDialog(currentRequest.code,
-                permissions,
-                listener);
-
-        dialog.setCancelable(false);
-
-        if (null == dialog.getButton(AlertDialog.BUTTON_POSITIVE))
-            throw new IllegalStateException("rationale dialog is missing the positive button");
-
-        if (null == dialog.getButton(AlertDialog.BUTTON_NEGATIVE))
-            throw new IllegalStateException("rationale dialog is missing the negative button");
-    }
-}
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.app.Fragment;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.app.FragmentActivity;
+
+import com.airg.android.device.ApiLevel;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import static android.os.Build.VERSION_CODES.M;
+
+/**
+ * This class streamlines all the runtime permissions boilerplate and allows your Activity,
+ * Fragment, or Compatibility Fragment to implement the Marshmallow runtime permissions by
+ * implementing a simple interface. This implementation is based on a talk that I gave in
+ * Vancouver Android Developers group. It is functional, but needs more work.
+ * Be sure to relay the results from the
+ * {@link Activity#onRequestPermissionsResult(int, String[], int[])},
+ * {@link Fragment#onRequestPermissionsResult(int, String[], int[])},
+ * or <code>android.support.v4.app.ActivityCompat.OnRequestPermissionsResultCallback#onRequestPermissionsResult(int, String[], int[])</code>
+ * to your <code>PermissionsHandler</code> instance.
+ * <p>
+ * The request logic lives in the platform independent {@link PermissionsEngine}
+ * (<code>rtpermissions-core</code>). This class adapts it to Android: the checkers, the
+ * {@link AlertDialog} rationale, {@link Bundle} state, and per-Activity coordination.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class PermissionsHandler {
+    private static boolean ANDROID_M = ApiLevel.atLeast(M);
+
+    private static final PermissionGroups GROUPS =
+            ANDROID_M ? PermissionGroups.forApi(Build.VERSION.SDK_INT) : null;
+
+    static {
+        AndroidLogSink.install();
+    }
+
+    /**
+     * Request codes from <code>0xff00</code> through <code>0xffff</code> are used by
+     * {@link #request(String...)}. Avoid them in your own calls to {@link #check(int, String...)}.
+     */
+    public static final int FIRST_PROMISE_REQUEST_CODE = PermissionsEngine.FIRST_PROMISE_REQUEST_CODE;
+
+    /**
+     * System permission requests are issued with codes from <code>0xfe00</code> through
+     * <code>0xfeff</code>. Avoid them in your own calls to <code>requestPermissions</code>.
+     */
+    public static final int FIRST_SYSTEM_REQUEST_CODE = PermissionsCoordinator.FIRST_CODE;
+
+    /**
+     * Priority for permissions the app can't do without, e.g. to show its first screen. Requests
+     * made with {@link #check(int, String...)} have this priority.
+     */
+    public static final int PRIORITY_HIGH = PermissionsEngine.PRIORITY_HIGH;
+
+    /**
+     * Priority for optional permissions. Such requests wait until the Activity is idle before
+     * asking the user, and give way to high priority requests until they do.
+     */
+    public static final int PRIORITY_LOW = PermissionsEngine.PRIORITY_LOW;
+
+    private static final Map<Activity, PermissionsCoordinator> COORDINATORS = new WeakHashMap<>();
+
+    private static final String STATE_REQUEST = "com.airg.android.permission.PermissionsHandler.request";
+    private static final String STATE_FLOW = "com.airg.android.permission.PermissionsHandler.state";
+
+    private final PermissionsEngine engine;
+    private final PermissionChangeDetector changes;
+    private final ClientAdapter adapter = new ClientAdapter();
+    private volatile PermissionHandlerClient client;
+    private volatile RationalePresenter presenter;
+
+    private PermissionsHandler(final PermissionsChecker permissionsChecker,
+                               final PermissionsCoordinator permissionsCoordinator,
+                               final PermissionHandlerClient handlerClient) {
+        client = handlerClient;
+        changes = new PermissionChangeDetector(permissionsChecker);
+        engine = new PermissionsEngine(permissionsChecker,
+                MainThreadScheduler.INSTANCE,
+                permissionsCoordinator,
+                GROUPS,
+                adapter,
+                adapter);
+    }
+
+    /**
+     * Opt-in: read the grant state of the permissions declared in your manifest on a background
+     * thread, so that the first {@link #check(int, String...)} does not have to ask the system on
+     * the main thread. Call from {@link android.app.Application#onCreate()}. It is safe to call
+     * {@link #check(int, String...)} before the prefetch completes; it simply asks the system for
+     * anything not prefetched yet.
+     * <p>
+     * Also starts loading the record of permissions the user said never to ask for again, which
+     * are denied without a trip to the system. Otherwise that starts with the first handler.
+     *
+     * @param context any context. The application context is retained.
+     */
+    public static void prefetch(@NonNull final Context context) {
+        if (!ANDROID_M)
+            return;
+
+        PermissionsPrefetcher.start(context);
+        DenialPreferences.load(context);
+    }
+
+    /**
+     * Turn the library's debug logging on or off. Off by default, unless the
+     * <code>log.tag.rtpermissions</code> system property is set to <code>DEBUG</code>. When off,
+     * logging costs nothing; when on, messages are formatted on a background thread.
+     *
+     * @param enabled <code>true</code> to log
+     */
+    public static void setDebugLogging(final boolean enabled) {
+        PermissionsLog.setDebug(enabled);
+    }
+
+    /**
+     * Register a listener for request timings and outcomes, e.g. a {@link HistogramMetrics}.
+     * Applies to all handlers in the process.
+     *
+     * @param listener the listener or <code>null</code> to stop collecting metrics
+     */
+    public static void setMetrics(@Nullable final PermissionsMetrics listener) {
+        PermissionsEngine.setMetrics(listener);
+    }
+
+    /**
+     * For use within an {@link Activity}
+     *
+     * @param activity host Activity.
+     * @param client   A {@link PermissionHandlerClient} implementation
+     * @return An instance of {@link PermissionsHandler} to perform permission checks
+     */
+    public static PermissionsHandler with(@NonNull final Activity activity,
+                                          @NonNull final PermissionHandlerClient client) {
+        if (activity == client)
+            throw new IllegalArgumentException("Activities that implement PermissionHandlerClient can cause the " +
+                    "chain of permission acquisition to break");
+
+        if (!ANDROID_M)
+            return new PermissionsHandler(new LegacyPermissionChecker(), null, client);
+
+        return new PermissionsHandler(new ActivityPermissionsChecker(activity),
+                coordinator(activity),
+                client);
+    }
+
+    /**
+     * For use within a native {@link Fragment}
+     *
+     * @param fragment the host Fragment
+     * @param client   A {@link PermissionHandlerClient} implementation
+     * @return An instance of {@link PermissionsHandler} to perform permission checks
+     */
+    public static PermissionsHandler with(@NonNull final Fragment fragment,
+                                          @NonNull final PermissionHandlerClient client) {
+        if (!ANDROID_M)
+            return new PermissionsHandler(new LegacyPermissionChecker(), null, client);
+
+        return new PermissionsHandler(new FragmentPermissionsChecker(fragment),
+                coordinator(fragment.getActivity()),
+                client);
+    }
+
+    /**
+     * For use within a compat {@link android.support.v4.app.Fragment}
+     *
+     * @param fragment the host Fragment
+     * @param client   A {@link PermissionHandlerClient} implementation
+     * @return An instance of {@link PermissionsHandler} to perform permission checks
+     */
+    public static PermissionsHandler with(@NonNull final android.support.v4.app.Fragment fragment,
+                                          @NonNull final PermissionHandlerClient client) {
+        if (!ANDROID_M)
+            return new PermissionsHandler(new LegacyPermissionChecker(), null, client);
+
+        return new PermissionsHandler(new CompatFragmentPermissionsChecker(fragment),
+                coordinator(fragment.getActivity()),
+                client);
+    }
+
+    /**
+     * For use within a {@link FragmentActivity}. The handler lives in a retained, UI-less
+     * {@link PermissionsFragment} that receives permission results directly, so there is no need
+     * to relay <code>onRequestPermissionsResult</code>. Call again after a configuration change
+     * to get the same handler, with any in-flight request intact, bound to the new client.
+     *
+     * @param activity host Activity.
+     * @param client   A {@link PermissionHandlerClient} implementation
+     * @return The activity's retained {@link PermissionsHandler}
+     */
+    public static PermissionsHandler attach(@NonNull final FragmentActivity activity,
+                                            @NonNull final PermissionHandlerClient client) {
+        return attach(activity, PermissionsFragment.DEFAULT_TAG, client);
+    }
+
+    /**
+     * Like {@link #attach(FragmentActivity, PermissionHandlerClient)}, for when more than one
+     * retained handler is needed in the same activity (e.g. one per fragment).
+     *
+     * @param activity host Activity.
+     * @param tag      identifies the handler within the activity
+     * @param client   A {@link PermissionHandlerClient} implementation
+     * @return The retained {@link PermissionsHandler} for <code>tag</code>
+     */
+    public static PermissionsHandler attach(@NonNull final FragmentActivity activity,
+                                            @NonNull final String tag,
+                                            @NonNull final PermissionHandlerClient client) {
+        if (activity == client)
+            throw new IllegalArgumentException("Activities that implement PermissionHandlerClient can cause the " +
+                    "chain of permission acquisition to break");
+
+        return PermissionsFragment.attach(activity, tag, client);
+    }
+
+    /**
+     * @return the coordinator for the specified activity. Created on first use.
+     */
+    private static synchronized PermissionsCoordinator coordinator(@NonNull final Activity activity) {
+        // every Android M+ handler comes through here
+        DenialPreferences.load(activity);
+
+        PermissionsCoordinator coordinator = COORDINATORS.get(activity);
+
+        if (null == coordinator) {
+            coordinator = new PermissionsCoordinator(MainThreadScheduler.INSTANCE);
+            COORDINATORS.put(activity, coordinator);
+        }
+
+        return coordinator;
+    }
+
+    /**
+     * Hand a permission result received by an Activity (or one of its fragments) straight to the
+     * handlers that asked for it, instead of calling each handler's
+     * {@link #onRequestPermissionsResult(int, String[], int[])} in turn. The request code alone
+     * identifies them.
+     *
+     * @param activity     the host Activity
+     * @param requestCode  the result's request code
+     * @param permissions  list of permissions
+     * @param grantResults list of grant results
+     * @return <code>true</code> if the result belonged to handlers of <code>activity</code>
+     */
+    public static boolean dispatchPermissionsResult(@NonNull final Activity activity,
+                                                    final int requestCode,
+                                                    @NonNull final String[] permissions,
+                                                    @NonNull final int[] grantResults) {
+        final PermissionsCoordinator coordinator;
+
+        synchronized (PermissionsHandler.class) {
+            coordinator = COORDINATORS.get(activity);
+        }
+
+        return null != coordinator && coordinator.dispatch(requestCode, permissions, grantResults);
+    }
+
+    static PermissionsHandler headless(@NonNull final PermissionsFragment fragment,
+                                       @NonNull final PermissionHandlerClient client) {
+        if (!ANDROID_M)
+            return new PermissionsHandler(new LegacyPermissionChecker(), null, client);
+
+        // the fragment moves the handler to the coordinator of each activity it is attached to
+        return new PermissionsHandler(new CompatFragmentPermissionsChecker(fragment),
+                coordinator(fragment.getActivity()),
+                client);
+    }
+
+    /**
+     * Move a retained handler to the coordinator of the activity its fragment has just been
+     * attached to. The request in progress goes along, so results of a merged request in flight
+     * across a configuration change still reach every handler that took part in it.
+     */
+    void reattach(@NonNull final Activity activity) {
+        if (ANDROID_M)
+            engine.setCoordinator(coordinator(activity));
+    }
+
+    /**
+     * Hand a retained handler to a new client, e.g. after a configuration change. A rationale
+     * dialog that was showing went away with the old client, so it is shown again. So did the
+     * old client's presenter, if any.
+     */
+    void rebind(@NonNull final PermissionHandlerClient newClient) {
+        if (client == newClient)
+            return;
+
+        client = newClient;
+        presenter = null;
+        adapter.forgetRationale();
+        engine.reshowRationale();
+    }
+
+    /**
+     * Show rationales through <code>rationalePresenter</code> rather than
+     * {@link PermissionHandlerClient#showPermissionRationaleDialog}. The presenter belongs with
+     * the current client: a retained handler drops it when {@link #attach} hands it to a new
+     * client, so set it again after that. A rationale that is showing moves to the new presenter.
+     *
+     * @param rationalePresenter the presenter or <code>null</code> to go back to the client's
+     *                           dialogs
+     */
+    public void setRationalePresenter(@Nullable final RationalePresenter rationalePresenter) {
+        if (presenter == rationalePresenter)
+            return;
+
+        presenter = rationalePresenter;
+
+        if (adapter.hideRationale())
+            engine.reshowRationale();
+    }
+
+    /**
+     * Start permission check. If another request is in progress, this one is queued and started
+     * as soon as the ones before it finish. Asking again for exactly what the current request
+     * is asking for (e.g. from <code>onStart()</code> after a configuration change) does nothing:
+     * the current request's results are delivered instead.
+     * <p>
+     * May be called from any thread. Calls made off the main thread are queued right away and
+     * started on the main thread; the {@link PermissionHandlerClient} is always called there.
+     *
+     * @param requestCode A request code for use when checking permissions. Your {@link Activity}
+     * @param permissions permissions to check (constants from {@link android.Manifest.permission}
+     * @throws IllegalArgumentException if the permissions list is empty
+     * @throws IllegalStateException if too many requests are already waiting. It's a good idea to call {@link PermissionsHandler#abort()} from your <code>onPause()</code> method to abort any unfinished requests.
+     */
+    public void check(final int requestCode, @NonNull final String... permissions) {
+        engine.check(requestCode, permissions);
+    }
+
+    /**
+     * Start permission check with the given priority. High priority requests behave like
+     * {@link #check(int, String...)}. A low priority request that needs to ask the user waits
+     * until no other request of the same Activity is asking and the main thread is idle, and a
+     * high priority request made in the mean time, by this or another handler of the Activity,
+     * goes first. Without the prompt, e.g. when already granted, it completes right away.
+     *
+     * @param requestCode A request code for use when checking permissions
+     * @param priority    {@link #PRIORITY_HIGH} or {@link #PRIORITY_LOW}
+     * @param permissions permissions to check (constants from {@link android.Manifest.permission}
+     * @throws IllegalArgumentException if the permissions list is empty
+     * @throws IllegalStateException if too many requests are already waiting
+     */
+    public void check(final int requestCode, final int priority, @NonNull final String... permissions) {
+        engine.check(requestCode, priority, permissions);
+    }
+
+    /**
+     * Start permission check and get the result as a {@link PermissionPromise} rather than through
+     * the {@link PermissionHandlerClient} callbacks. The client is still asked for rationale
+     * dialogs. A request code from {@link #FIRST_PROMISE_REQUEST_CODE} up is assigned
+     * automatically, so relay all permission results to this handler, not only those with your own
+     * request codes.
+     * <p>
+     * May be called from any thread. Use {@link PermissionPromise#then(java.util.concurrent.Executor, PermissionPromise.Callback)}
+     * to get the result back on the caller's executor.
+     *
+     * @param permissions permissions to check (constants from {@link android.Manifest.permission}
+     * @return a promise of the result
+     * @throws IllegalArgumentException if the permissions list is empty
+     * @throws IllegalStateException if too many requests are already waiting
+     */
+    public PermissionPromise request(@NonNull final String... permissions) {
+        return engine.request(permissions);
+    }
+
+    /**
+     * Look up a permission without asking the user. Non-blocking and safe from any thread, e.g.
+     * from a sync adapter or repository.
+     *
+     * @param permission permission to look up
+     * @return <code>true</code> if the permission is granted
+     */
+    public boolean isGranted(@NonNull final String permission) {
+        return engine.isGranted(permission);
+    }
+
+    /**
+     * Look up several permissions at once without asking the user. Non-blocking and safe from any
+     * thread.
+     *
+     * @param permissions permissions to look up
+     * @return an unmodifiable set of the permissions granted at the time of the call
+     */
+    public Set<String> snapshot(@NonNull final String... permissions) {
+        return engine.granted(new HashSet<>(Arrays.asList(permissions)));
+    }
+
+    /**
+     * Watch <code>permissions</code> for changes made outside of this handler's requests, e.g.
+     * in the app's system settings. Changes are picked up in {@link #onResume()}, which reads
+     * every watched permission in one go and calls each listener only if some of its permissions
+     * changed. Call on the main thread. Handlers from
+     * {@link #attach(FragmentActivity, PermissionHandlerClient)} outlive their activity, so remove
+     * listeners that refer to it in <code>onDestroy</code>.
+     *
+     * @param listener    listener to add. Adding it again watches more permissions.
+     * @param permissions permissions to watch. Their current state is the baseline.
+     */
+    public void addPermissionChangeListener(@NonNull final PermissionChangeListener listener,
+                                            @NonNull final String... permissions) {
+        changes.watch(listener, new HashSet<>(Arrays.asList(permissions)));
+    }
+
+    /**
+     * @param listener listener to remove
+     */
+    public void removePermissionChangeListener(@NonNull final PermissionChangeListener listener) {
+        changes.unwatch(listener);
+    }
+
+    /**
+     * Look for changes to permissions watched with
+     * {@link #addPermissionChangeListener(PermissionChangeListener, String...)}. Call from your
+     * host's <code>onResume</code>, e.g. to pick up grants made in the system settings. Handlers
+     * from {@link #attach(FragmentActivity, PermissionHandlerClient)} do this themselves.
+     */
+    public void onResume() {
+        changes.refresh();
+    }
+
+    /**
+     * Aborts the current request if one is in progress and drops all queued requests. A rationale
+     * that is showing is dismissed.
+     * <p>
+     * May be called from any thread. Calls made off the main thread take effect once the main
+     * thread gets to them.
+     */
+    public void abort() {
+        engine.abort();
+    }
+
+    /**
+     * Save the request in progress, if it is waiting on the user, so that a handler recreated
+     * after process death can finish it. Call from your host's <code>onSaveInstanceState</code>.
+     * Requests made with {@link #request(String...)} are not saved. Keep one handler per
+     * {@link Bundle}.
+     *
+     * @param outState the host's saved state
+     */
+    public void onSaveInstanceState(@NonNull final Bundle outState) {
+        final PermissionsEngine.Flow current = engine.current();
+
+        if (null == current.request || null != current.request.promise)
+            return;
+
+        if (current.state != PermissionsEngine.State.RATIONALE
+                && current.state != PermissionsEngine.State.AWAITING_RESULT)
+            return;
+
+        outState.putParcelable(STATE_REQUEST, new ParcelableRequest(current.request));
+        outState.putString(STATE_FLOW, current.state.name());
+    }
+
+    /**
+     * Pick up a request saved by {@link #onSaveInstanceState(Bundle)}. Call right after creating
+     * the handler in <code>onCreate</code>. Results delivered to the new process for that request
+     * complete it without another round trip. A rationale dialog that was showing is shown again.
+     *
+     * @param savedInstanceState the host's saved state. May be <code>null</code>.
+     */
+    public void restore(@Nullable final Bundle savedInstanceState) {
+        if (null == savedInstanceState)
+            return;
+
+        savedInstanceState.setClassLoader(ParcelableRequest.class.getClassLoader());
+        final ParcelableRequest saved = savedInstanceState.getParcelable(STATE_REQUEST);
+        final String state = savedInstanceState.getString(STATE_FLOW);
+
+        if (null == saved || null == state)
+            return;
+
+        engine.restore(saved.request, PermissionsEngine.State.valueOf(state));
+    }
+
+    /**
+     * Call from your {@link Activity#onRequestPermissionsResult(int, String[], int[])}, {@link Fragment#onRequestPermissionsResult(int, String[], int[])}, or your {@link android.support.v4.app.Fragment#onRequestPermissionsResult(int, String[], int[])}. It is safe to call this method even with request numbers that don't match what was provided to {@link PermissionsHandler#check(int, String...)} as they are simply ignored.
+     * Requests made by several handlers of the same Activity in the same frame are merged into one
+     * system request, issued through one of them. Its results are passed on to all the others.
+     * <p>
+     * System requests go out with codes the library allocates per Activity, from
+     * {@link #FIRST_SYSTEM_REQUEST_CODE} through <code>0xfeff</code>, not with your request codes,
+     * which only come back in the {@link PermissionHandlerClient} callbacks. So relay every
+     * result, without filtering on your own codes. Any handler of the Activity will do, or use
+     * {@link #dispatchPermissionsResult(Activity, int, String[], int[])}.
+     * @param requestCode premission check request code
+     * @param permissions list of permissions
+     * @param grantResults list of grant results
+     */
+    public void onRequestPermissionsResult(final int requestCode,
+                                           final String[] permissions,
+                                           final int[] grantResults) {
+        engine.onRequestPermissionsResult(requestCode, permissions, grantResults);
+    }
+
+    /**
+     * Passes the engine's callbacks on to whichever client is bound at the time and shows the
+     * rationale through the presenter, or the client's {@link AlertDialog} if there is none
+     */
+    private final class ClientAdapter implements PermissionsListener, RationaleDialog {
+        private final ClientDialogPresenter clientDialog = new ClientDialogPresenter();
+
+        // what the rationale is showing on, if it is
+        private RationalePresenter showing;
+
+        @Override
+        public void onPermissionsGranted(final int requestCode, @NonNull final Set<String> granted) {
+            changes.observed(granted, true);
+            client.onPermissionsGranted(requestCode, granted);
+        }
+
+        @Override
+        public void onPermissionDeclined(final int requestCode, @NonNull final Set<String> declined) {
+            changes.observed(declined, false);
+            client.onPermissionDeclined(requestCode, declined);
+        }
+
+        @Override
+        public void onPermissionsUndeclared(final int requestCode, @NonNull final Set<String> undeclared) {
+            final PermissionHandlerClient c = client;
+
+            if (c instanceof UndeclaredPermissionsListener)
+                ((UndeclaredPermissionsListener) c).onPermissionsUndeclared(requestCode, undeclared);
+            else
+                c.onPermissionDeclined(requestCode, undeclared);
+        }
+
+        @Override
+        public void show(final int requestCode,
+                         @NonNull final Set<String> permissions,
+                         @NonNull final Answer answer) {
+            final RationalePresenter p = presenter;
+
+            showing = null == p ? clientDialog : p;
+            showing.show(requestCode, permissions, new RationalePresenter.Answer() {
+                @Override
+                public void accepted() {
+                    answer.accepted();
+                }
+
+                @Override
+                public void declined() {
+                    answer.declined();
+                }
+            });
+        }
+
+        @Override
+        public void dismissed(final int requestCode) {
+            hideRationale();
+            client.onPermissionRationaleDialogDimissed(requestCode);
+        }
+
+        /**
+         * @return <code>true</code> if a rationale was showing
+         */
+        boolean hideRationale() {
+            final RationalePresenter p = showing;
+
+            if (null == p)
+                return false;
+
+            showing = null;
+            p.hide();
+            return true;
+        }
+
+        /**
+         * The rationale went away along with its window
+         */
+        void forgetRationale() {
+            showing = null;
+        }
+    }
+
+    /**
+     * The original presentation: a new {@link AlertDialog} from the client every time
+     */
+    private final class ClientDialogPresenter implements RationalePresenter {
+        private AlertDialog dialog;
+
+        @Override
+        public void show(final int requestCode,
+                         @NonNull final Set<String> permissions,
+                         @NonNull final Answer answer) {
+            final DialogInterface.OnClickListener listener = new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(final DialogInterface d, final int which) {
+                    switch (which) {
+                        case DialogInterface.BUTTON_POSITIVE:
+                            answer.accepted();
+                            break;
+                        case DialogInterface.BUTTON_NEGATIVE:
+                            answer.declined();
+                            break;
+                        default:
+                            client.onPermissionRationaleDialogDimissed(requestCode);
+                    }
+                }
+            };
+
+            dialog = client.showPermissionRationaleDialog(requestCode, permissions, listener);
+            dialog.setCancelable(false);
+
+            if (null == dialog.getButton(AlertDialog.BUTTON_POSITIVE))
+                throw new IllegalStateException("rationale dialog is missing the positive button");
+
+            if (null == dialog.getButton(AlertDialog.BUTTON_NEGATIVE))
+                throw new IllegalStateException("rationale dialog is missing the negative button");
+        }
+
+        @Override
+        public void hide() {
+            final AlertDialog d = dialog;
+            dialog = null;
+
+            if (null != d && d.isShowing())
+                d.dismiss();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Warms the {@link GrantCache} off the main thread with the grant state of every permission
+ * declared in the manifest. Runs at most once per process. A
+ * {@link PermissionsHandler#check(int, String...)} that gets there first simply asks the system
+ * itself.
+ */
+final class PermissionsPrefetcher implements Runnable {
+    private static final PermissionsLog LOG = PermissionsLog.tag("PermissionsPrefetcher");
+
+    private static final AtomicBoolean STARTED = new AtomicBoolean(false);
+
+    private final Context context;
+
+    private PermissionsPrefetcher(final Context c) {
+        context = c;
+    }
+
+    /**
+     * Start prefetching on a background thread, unless it has already been started
+     *
+     * @param context any context. The application context is retained.
+     */
+    static void start(@NonNull final Context context) {
+        if (!STARTED.compareAndSet(false, true))
+            return;
+
+        final Thread thread = new Thread(new PermissionsPrefetcher(context.getApplicationContext()),
+                "rtpermissions-prefetch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        final int declared;
+
+        try {
+            declared = PackageGrants.cache(context);
+        } catch (PackageManager.NameNotFoundException e) {
+            LOG.e(e, "Unable to read declared permissions");
+            return;
+        }
+
+        LOG.d("Prefetched the grant state of %d declared permissions", declared);
+    }
+}
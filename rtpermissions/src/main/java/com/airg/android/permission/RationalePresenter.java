@@ -0,0 +1,65 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.NonNull;
+
+import java.util.Set;
+
+/**
+ * Shows the permission rationale to the user. Unlike
+ * {@link PermissionHandlerClient#showPermissionRationaleDialog}, which builds a new dialog every
+ * time, a presenter owns its UI and may keep it around, so repeated prompts cost a re-bind rather
+ * than an inflate and a layout pass. Presentations need not be dialogs: see
+ * {@link DialogRationalePresenter} and {@link ViewRationalePresenter} (inline banners, bottom
+ * sheets).
+ * <p>
+ * Register with {@link PermissionsHandler#setRationalePresenter(RationalePresenter)}. Called on the
+ * main thread.
+ */
+public interface RationalePresenter {
+    /**
+     * Show the rationale. Once the user decides, call one of <code>answer</code>'s methods,
+     * once.
+     *
+     * @param requestCode original request code
+     * @param permissions Permissions that need clarification
+     * @param answer      where the user's decision goes
+     */
+    void show(final int requestCode,
+              @NonNull final Set<String> permissions,
+              @NonNull final Answer answer);
+
+    /**
+     * The user's decision has been acted upon, or the rationale is no longer needed. Hide it.
+     */
+    void hide();
+
+    interface Answer {
+        /**
+         * Go ahead and ask the system
+         */
+        void accepted();
+
+        /**
+         * Don't ask. The permissions are reported declined.
+         */
+        void declined();
+    }
+}
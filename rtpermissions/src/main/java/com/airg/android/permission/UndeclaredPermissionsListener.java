@@ -0,0 +1,37 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import java.util.Set;
+
+/**
+ * Optionally implemented by a {@link PermissionHandlerClient} that wants to tell permissions
+ * missing from its manifest apart from ones the user declined. The system denies those without
+ * asking, so they are resolved up front, without a trip to the system. Clients that do not
+ * implement this get them in {@link PermissionHandlerClient#onPermissionDeclined(int, Set)}.
+ */
+public interface UndeclaredPermissionsListener {
+    /**
+     * Some requested permissions are not declared in the manifest
+     *
+     * @param requestCode original request code
+     * @param undeclared  the undeclared permissions
+     */
+    void onPermissionsUndeclared(final int requestCode, final Set<String> undeclared);
+}
@@ -0,0 +1,109 @@
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission;
+
+import android.support.annotation.IdRes;
+import android.support.annotation.NonNull;
+import android.view.View;
+
+import java.util.Set;
+
+/**
+ * A {@link RationalePresenter} over a view that is already part of the layout, e.g. an inline
+ * banner. The view and its buttons are looked up once; showing the rationale only re-binds it.
+ * By default the view is shown and hidden through its visibility. Override {@link #onShow(View)}
+ * and {@link #onHide(View)} for other presentations, e.g. to expand and collapse a bottom sheet.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public abstract class ViewRationalePresenter implements RationalePresenter, View.OnClickListener {
+    private final View view;
+    private final View positive;
+    private final View negative;
+
+    private Answer answer;
+
+    /**
+     * @param rationaleView the rationale view
+     * @param positiveId    id of the "go ahead" button within <code>rationaleView</code>
+     * @param negativeId    id of the "no thanks" button within <code>rationaleView</code>
+     * @throws IllegalArgumentException if either button is missing
+     */
+    protected ViewRationalePresenter(@NonNull final View rationaleView,
+                                     @IdRes final int positiveId,
+                                     @IdRes final int negativeId) {
+        view = rationaleView;
+        positive = view.findViewById(positiveId);
+        negative = view.findViewById(negativeId);
+
+        if (null == positive)
+            throw new IllegalArgumentException("rationale view is missing the positive button");
+
+        if (null == negative)
+            throw new IllegalArgumentException("rationale view is missing the negative button");
+
+        positive.setOnClickListener(this);
+        negative.setOnClickListener(this);
+    }
+
+    /**
+     * Update the view for a request, e.g. show only the explanations for <code>permissions</code>
+     */
+    protected abstract void onBind(@NonNull final View view,
+                                   final int requestCode,
+                                   @NonNull final Set<String> permissions);
+
+    protected void onShow(@NonNull final View view) {
+        view.setVisibility(View.VISIBLE);
+    }
+
+    protected void onHide(@NonNull final View view) {
+        view.setVisibility(View.GONE);
+    }
+
+    @Override
+    public final void show(final int requestCode,
+                           @NonNull final Set<String> permissions,
+                           @NonNull final Answer requestAnswer) {
+        answer = requestAnswer;
+        onBind(view, requestCode, permissions);
+        onShow(view);
+    }
+
+    @Override
+    public final void hide() {
+        answer = null;
+        onHide(view);
+    }
+
+    @Override
+    public final void onClick(final View v) {
+        final Answer a = answer;
+
+        if (null == a)
+            return;
+
+        if (v == positive) {
+            answer = null;
+            a.accepted();
+        } else if (v == negative) {
+            answer = null;
+            a.declined();
+        }
+    }
+}
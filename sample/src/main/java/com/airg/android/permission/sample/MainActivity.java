@@ -1,337 +1,518 @@
-/*
- * ****************************************************************************
- *   Copyright  2016 airG Inc.                                                 *
- *                                                                             *
- *   Licensed under the Apache License, Version 2.0 (the "License");           *
- *   you may not use this file except in compliance with the License.          *
- *   You may obtain a copy of the License at                                   *
- *                                                                             *
- *       http://www.apache.org/licenses/LICENSE-2.0                            *
- *                                                                             *
- *   Unless required by applicable law or agreed to in writing, software       *
- *   distributed under the License is distributed on an "AS IS" BASIS,         *
- *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
- *   See the License for the specific language governing permissions and       *
- *   limitations under the License.                                            *
- * ***************************************************************************
- */
-
-package com.airg.android.permission.sample;
-
-import android.app.AlertDialog;
-import android.content.DialogInterface;
-import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
-import android.os.Bundle;
-import android.provider.ContactsContract;
-import android.provider.Settings;
-import android.support.annotation.NonNull;
-import android.support.v4.app.FragmentManager;
-import android.support.v4.app.FragmentTransaction;
-import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
-import android.support.v7.app.AppCompatActivity;
-import android.support.v7.widget.LinearLayoutManager;
-import android.support.v7.widget.RecyclerView;
-import android.text.TextUtils;
-import android.util.Log;
-import android.view.LayoutInflater;
-import android.view.Menu;
-import android.view.MenuItem;
-import android.view.View;
-import android.view.ViewGroup;
-import android.widget.TextView;
-import android.widget.Toast;
-
-import com.airg.android.permission.PermissionHandlerClient;
-import com.airg.android.permission.PermissionsHandler;
-
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Set;
-
-import butterknife.BindView;
-import butterknife.ButterKnife;
-
-import static android.Manifest.permission.READ_CONTACTS;
-
-/**
- * Created by Mahram Z. Foadi.
- */
-public class MainActivity
-        extends AppCompatActivity
-        implements LoaderManager.LoaderCallbacks<Cursor> {
-
-    private static final String DANGER_FRAGMENT = "danger";
-
-    private static final String LOGTAG = "CONTACTIVITY";
-
-    private static final int CONTACTS_LOADER = 1;
-
-    private static final int PERM_REQUEST_CONTACTS = 1;
-
-    private static final int REQUEST_SETTINGS = 1;
-
-    @BindView(android.R.id.list)
-    RecyclerView list;
-
-    private final List<String> names = new ArrayList<>();
-
-    private ContactsAdapter adapter;
-
-    private AlertDialog dialog;
-
-    private PermissionsHandler permissionsHandler;
-
-    @Override
-    protected void onCreate(final Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
-        ButterKnife.bind(this);
-
-        list.setLayoutManager(new LinearLayoutManager(this));
-
-        adapter = new ContactsAdapter();
-        list.setAdapter(adapter);
-        checkContactsReadPermission();
-    }
-
-    @Override
-    protected void onPause() {
-        if (null != dialog) {
-            dialog.dismiss();
-            dialog = null;
-        }
-
-        super.onPause();
-    }
-
-    private void checkContactsReadPermission() {
-        Toast.makeText(this, R.string.checking_permission, Toast.LENGTH_SHORT).show();
-        permissionsHandler = PermissionsHandler.with(this,
-                new MainActivityPermissionsHandlerClient());
-        permissionsHandler.check(PERM_REQUEST_CONTACTS, READ_CONTACTS);
-    }
-
-
-    private void gotoSettings() {
-        startActivityForResult(new Intent(Settings.ACTION_APPLICATION_DETAILS_SETTINGS,
-                        Uri.fromParts("package", getPackageName(), null)),
-                REQUEST_SETTINGS);
-    }
-
-    @Override
-    protected void onActivityResult(final int requestCode, final int resultCode, final Intent data) {
-        super.onActivityResult(requestCode, resultCode, data);
-
-        if (requestCode != REQUEST_SETTINGS)
-            return;
-
-        Log.d(LOGTAG, "Returned from settings with result " + resultCode);
-        checkContactsReadPermission();
-    }
-
-    @Override
-    public void onRequestPermissionsResult(final int requestCode,
-                                           @NonNull final String[] permissions,
-                                           @NonNull final int[] grantResults) {
-        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
-
-        if (requestCode != PERM_REQUEST_CONTACTS)
-            return;
-
-        permissionsHandler.onRequestPermissionsResult(requestCode, permissions, grantResults);
-    }
-
-    @Override
-    public Loader<Cursor> onCreateLoader(final int id, final Bundle args) {
-        if (CONTACTS_LOADER != id)
-            throw new IllegalArgumentException("Unknown loader id: " + id);
-
-        return new CursorLoader(this, ContactsContract.Contacts.CONTENT_URI,
-                new String[]{ContactsContract.Contacts._ID,
-                        ContactsContract.Contacts.DISPLAY_NAME},
-                null,
-                null,
-                ContactsContract.Contacts.DISPLAY_NAME + " ASC");
-    }
-
-    @Override
-    public void onLoadFinished(final Loader<Cursor> loader, final Cursor data) {
-        if (CONTACTS_LOADER != loader.getId())
-            throw new IllegalArgumentException("Unknown loader id: " + loader.getId());
-
-        names.clear();
-
-        if (data.moveToFirst()) {
-            do {
-                final String name = data.getString(1);
-
-                if (TextUtils.isEmpty(name))
-                    continue;
-
-                names.add(name);
-            } while (data.moveToNext());
-        }
-
-        adapter.notifyDataSetChanged();
-    }
-
-    @Override
-    public void onLoaderReset(final Loader<Cursor> loader) {
-        if (CONTACTS_LOADER != loader.getId())
-            throw new IllegalArgumentException("Unknown loader id: " + loader.getId());
-
-        names.clear();
-    }
-
-    private class ContactsAdapter
-            extends RecyclerView.Adapter {
-
-        private final LayoutInflater inflater = LayoutInflater.from(MainActivity.this);
-
-        @Override
-        public RecyclerView.ViewHolder onCreateViewHolder(final ViewGroup parent, final int viewType) {
-            return viewType == R.layout.item_contact
-                    ? new ContactHolder(inflater.inflate(R.layout.item_contact, parent, false))
-                    : new HeaderHolder(inflater.inflate(R.layout.no_contacts_header, parent, false));
-        }
-
-        @Override
-        public void onBindViewHolder(final RecyclerView.ViewHolder holder, final int position) {
-            if (holder instanceof ContactHolder) {
-                ((ContactHolder) holder).text.setText(names.get(position));
-            }
-        }
-
-        @Override
-        public int getItemViewType(int position) {
-            return names.isEmpty() ? R.layout.no_contacts_header : R.layout.item_contact;
-        }
-
-        @Override
-        public int getItemCount() {
-            return Math.max(1, names.size());
-        }
-    }
-
-    @Override
-    public boolean onCreateOptionsMenu(final Menu menu) {
-        super.onCreateOptionsMenu(menu);
-
-        final MenuItem record = menu.add(0, R.id.action_danger, 0, R.string.dangerous_action)
-                .setIcon(R.drawable.ic_action_lock);
-        record.setShowAsAction(MenuItem.SHOW_AS_ACTION_ALWAYS);
-
-        return true;
-    }
-
-    @Override
-    public boolean onOptionsItemSelected(final MenuItem item) {
-        if (item.getItemId() != R.id.action_danger)
-            return super.onOptionsItemSelected(item);
-
-        doSomethingDangerous();
-        return true;
-    }
-
-    private void doSomethingDangerous() {
-        final FragmentManager fm = getSupportFragmentManager();
-
-        if (fm.findFragmentByTag(DANGER_FRAGMENT) != null)
-            return;
-
-        // show the fragment
-        final FragmentTransaction ft = fm.beginTransaction();
-        ft.add(android.R.id.custom, new DangerousFragment(), DANGER_FRAGMENT);
-        ft.addToBackStack(DANGER_FRAGMENT);
-        ft.commit();
-    }
-
-    private class MainActivityPermissionsHandlerClient implements PermissionHandlerClient {
-        @Override
-        public void onPermissionsGranted(int requestCode, Set<String> granted) {
-            if (PERM_REQUEST_CONTACTS != requestCode)
-                return;
-
-            Toast.makeText(MainActivity.this, R.string.permission_granted, Toast.LENGTH_SHORT).show();
-            Log.d(LOGTAG, "Permission granted. Initializing loader.");
-            getSupportLoaderManager().initLoader(CONTACTS_LOADER, null, MainActivity.this);
-        }
-
-        @Override
-        public void onPermissionDeclined(int requestCode, Set<String> denied) {
-            if (PERM_REQUEST_CONTACTS != requestCode)
-                return;
-
-            Toast.makeText(MainActivity.this, R.string.permission_denied, Toast.LENGTH_SHORT).show();
-            Log.d(LOGTAG, "Permission denied. Bailing.");
-
-            final DialogInterface.OnClickListener listener = new DialogInterface.OnClickListener() {
-                @Override
-                public void onClick(final DialogInterface dialog, final int which) {
-                    if (which != DialogInterface.BUTTON_NEUTRAL) {
-                        finish();
-                        return;
-                    }
-
-                    gotoSettings();
-                }
-            };
-
-            dialog = new AlertDialog.Builder(MainActivity.this)
-                    .setTitle(R.string.no_soup)
-                    .setMessage(R.string.contacts_permission_denied)
-                    .setPositiveButton(android.R.string.ok, listener)
-                    .setNeutralButton(R.string.change, listener)
-                    .setCancelable(true)
-                    .setOnCancelListener(new DialogInterface.OnCancelListener() {
-                        @Override
-                        public void onCancel(final DialogInterface dialog) {
-                            finish();
-                        }
-                    })
-                    .create();
-            dialog.show();
-        }
-
-        @Override
-        public void onPermissionRationaleDialogDimissed(int requestCode) {
-            dialog = null;
-        }
-
-        @Override
-        public AlertDialog showPermissionRationaleDialog(int requestCode,
-                                                         @NonNull Collection<String> permissions,
-                                                         @NonNull DialogInterface.OnClickListener listener) {
-            dialog = new AlertDialog.Builder(MainActivity.this)
-                    .setTitle(R.string.contacts_access)
-                    .setMessage(R.string.contacts_permission_rationale)
-                    .setPositiveButton(R.string.your_contacts, listener)
-                    .setNegativeButton(R.string.no_way, listener)
-                    .show();
-            return dialog;
-        }
-    }
-
-    static class ContactHolder
-            extends RecyclerView.ViewHolder {
-
-        @BindView(android.R.id.title)
-        TextView text;
-
-        ContactHolder(final View itemView) {
-            super(itemView);
-            ButterKnife.bind(this, itemView);
-        }
-    }
-
-    static class HeaderHolder extends RecyclerView.ViewHolder {
-        HeaderHolder(final View itemView) {
-            super(itemView);
-        }
-    }
-}
+/*
+ * ****************************************************************************
+ *   Copyright  2016 airG Inc.                                                 *
+ *                                                                             *
+ *   Licensed under the Apache License, Version 2.0 (the "License");           *
+ *   you may not use this file except in compliance with the License.          *
+ *   You may obtain a copy of the License at                                   *
+ *                                                                             *
+ *       http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                             *
+ *   Unless required by applicable law or agreed to in writing, software       *
+ *   distributed under the License is distributed on an "AS IS" BASIS,         *
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  *
+ *   See the License for the specific language governing permissions and       *
+ *   limitations under the License.                                            *
+ * ***************************************************************************
+ */
+
+package com.airg.android.permission.sample;
+
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.ContactsContract;
+import android.provider.Settings;
+import android.support.annotation.NonNull;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.airg.android.permission.PermissionChangeListener;
+import com.airg.android.permission.PermissionHandlerClient;
+import com.airg.android.permission.PermissionsHandler;
+
+import java.util.Collection;
+import java.util.Set;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+import static android.Manifest.permission.READ_CONTACTS;
+
+/**
+ * Created by Mahram Z. Foadi.
+ */
+public class MainActivity
+        extends AppCompatActivity
+        implements LoaderManager.LoaderCallbacks<Cursor> {
+
+    private static final String DANGER_FRAGMENT = "danger";
+
+    private static final String LOGTAG = "CONTACTIVITY";
+
+    private static final int CONTACTS_LOADER = 1;
+
+    private static final int PERM_REQUEST_CONTACTS = 1;
+
+    private static final int REQUEST_SETTINGS = 1;
+
+    @BindView(android.R.id.list)
+    RecyclerView list;
+
+    private ContactsAdapter adapter;
+
+    private AlertDialog dialog;
+    private AlertDialog rationaleDialog;
+    // the rationale was dropped on pause, so the contacts request has to go out again
+    private boolean checkOnResume;
+
+    private PermissionsHandler permissionsHandler;
+
+    // picks up a grant made in the settings screen once we're resumed. The handler outlives us, so
+    // this goes in onDestroy().
+    private final PermissionChangeListener contactsGranted = new PermissionChangeListener() {
+        @Override
+        public void onPermissionsChanged(@NonNull final Set<String> granted,
+                                         @NonNull final Set<String> revoked) {
+            if (!granted.contains(READ_CONTACTS))
+                return;
+
+            Log.d(LOGTAG, "Permission granted in settings. Initializing loader.");
+            getSupportLoaderManager().initLoader(CONTACTS_LOADER, null, MainActivity.this);
+        }
+    };
+
+    @Override
+    protected void onCreate(final Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+        ButterKnife.bind(this);
+
+        list.setLayoutManager(new LinearLayoutManager(this));
+
+        adapter = new ContactsAdapter();
+        list.setAdapter(adapter);
+
+        // retained across configuration changes and receives its own results. No relaying needed.
+        permissionsHandler = PermissionsHandler.attach(this,
+                new MainActivityPermissionsHandlerClient());
+        permissionsHandler.addPermissionChangeListener(contactsGranted, READ_CONTACTS);
+        checkContactsReadPermission();
+    }
+
+    @Override
+    protected void onDestroy() {
+        permissionsHandler.removePermissionChangeListener(contactsGranted);
+        super.onDestroy();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+
+        if (checkOnResume) {
+            checkContactsReadPermission();
+            checkOnResume = false;
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        // the handler waits for an answer to its rationale. Dismissing the dialog behind its back
+        // would leave it waiting for good, so abort: that hides the rationale and drops the request.
+        if (null != rationaleDialog && rationaleDialog.isShowing()) {
+            permissionsHandler.abort();
+            checkOnResume = true;
+        }
+
+        rationaleDialog = null;
+
+        if (null != dialog) {
+            dialog.dismiss();
+            dialog = null;
+        }
+
+        super.onPause();
+    }
+
+    private void checkContactsReadPermission() {
+        Toast.makeText(this, R.string.checking_permission, Toast.LENGTH_SHORT).show();
+        permissionsHandler.check(PERM_REQUEST_CONTACTS, READ_CONTACTS);
+    }
+
+
+    private void gotoSettings() {
+        startActivityForResult(new Intent(Settings.ACTION_APPLICATION_DETAILS_SETTINGS,
+                        Uri.fromParts("package", getPackageName(), null)),
+                REQUEST_SETTINGS);
+    }
+
+    @Override
+    protected void onActivityResult(final int requestCode, final int resultCode, final Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (requestCode != REQUEST_SETTINGS)
+            return;
+
+        Log.d(LOGTAG, "Returned from settings with result " + resultCode);
+
+        // a grant is reported to the change listener on resume. Only ask again if there was none.
+        if (!permissionsHandler.isGranted(READ_CONTACTS))
+            checkContactsReadPermission();
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(final int id, final Bundle args) {
+        if (CONTACTS_LOADER != id)
+            throw new IllegalArgumentException("Unknown loader id: " + id);
+
+        return new ContactsLoader(this);
+    }
+
+    @Override
+    public void onLoadFinished(final Loader<Cursor> loader, final Cursor data) {
+        if (CONTACTS_LOADER != loader.getId())
+            throw new IllegalArgumentException("Unknown loader id: " + loader.getId());
+
+        adapter.swapCursor((ContactsCursor) data);
+    }
+
+    @Override
+    public void onLoaderReset(final Loader<Cursor> loader) {
+        if (CONTACTS_LOADER != loader.getId())
+            throw new IllegalArgumentException("Unknown loader id: " + loader.getId());
+
+        // the loader closes the cursor
+        adapter.swapCursor(null);
+    }
+
+    /**
+     * Leaves contacts without a name out in the query itself and, still off the main thread, walks
+     * the result once and diffs it against the previous load for {@link ContactsAdapter}
+     */
+    private static final class ContactsLoader extends CursorLoader {
+        // what the adapter was last handed. Only the ids and names: the cursor may be closed by now.
+        private volatile Contacts delivered;
+
+        ContactsLoader(final Context context) {
+            super(context, ContactsContract.Contacts.CONTENT_URI,
+                    new String[]{ContactsContract.Contacts._ID,
+                            ContactsContract.Contacts.DISPLAY_NAME},
+                    ContactsContract.Contacts.DISPLAY_NAME + " IS NOT NULL AND "
+                            + ContactsContract.Contacts.DISPLAY_NAME + " != ''",
+                    null,
+                    ContactsContract.Contacts.DISPLAY_NAME + " ASC");
+        }
+
+        @Override
+        public Cursor loadInBackground() {
+            final Cursor cursor = super.loadInBackground();
+
+            if (null == cursor)
+                return null;
+
+            final Contacts base = delivered;
+            final Contacts contacts = new Contacts(cursor);
+
+            // the "no contacts" header comes and goes. Nothing to diff.
+            final DiffUtil.DiffResult changes =
+                    null == base || base.size() == 0 || contacts.size() == 0
+                            ? null
+                            : DiffUtil.calculateDiff(new ContactsDiff(base, contacts), false);
+
+            return new ContactsCursor(cursor, contacts, base, changes);
+        }
+
+        @Override
+        public void deliverResult(final Cursor cursor) {
+            // CursorLoader only hands it on while started
+            if (isStarted() && cursor instanceof ContactsCursor)
+                delivered = ((ContactsCursor) cursor).rows;
+
+            super.deliverResult(cursor);
+        }
+    }
+
+    /**
+     * Each row's id and name, in cursor order
+     */
+    private static final class Contacts {
+        static final int COLUMN_ID = 0;
+        static final int COLUMN_NAME = 1;
+
+        final long[] ids;
+        final String[] names;
+
+        Contacts(final Cursor cursor) {
+            final int count = cursor.getCount();
+            ids = new long[count];
+            names = new String[count];
+
+            for (int i = 0; cursor.moveToPosition(i); i++) {
+                ids[i] = cursor.getLong(COLUMN_ID);
+                names[i] = cursor.getString(COLUMN_NAME);
+            }
+        }
+
+        int size() {
+            return ids.length;
+        }
+    }
+
+    /**
+     * The contacts cursor along with its rows and the changes from the load it was diffed against
+     */
+    private static final class ContactsCursor extends CursorWrapper {
+        final Contacts rows;
+        // the load the changes lead from, or null if there are none to apply
+        final Contacts base;
+        final DiffUtil.DiffResult changes;
+
+        ContactsCursor(final Cursor cursor,
+                       final Contacts loaded,
+                       final Contacts diffedAgainst,
+                       final DiffUtil.DiffResult diff) {
+            super(cursor);
+            rows = loaded;
+            base = null == diff ? null : diffedAgainst;
+            changes = diff;
+        }
+
+        int size() {
+            return rows.size();
+        }
+    }
+
+    /**
+     * Rows are the same contact if their ids match and unchanged if their names do
+     */
+    private static final class ContactsDiff extends DiffUtil.Callback {
+        private final Contacts before;
+        private final Contacts after;
+
+        ContactsDiff(final Contacts oldContacts, final Contacts newContacts) {
+            before = oldContacts;
+            after = newContacts;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return before.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return after.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(final int oldPosition, final int newPosition) {
+            return before.ids[oldPosition] == after.ids[newPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(final int oldPosition, final int newPosition) {
+            return TextUtils.equals(before.names[oldPosition], after.names[newPosition]);
+        }
+    }
+
+    /**
+     * Binds rows straight from the cursor window. A new load is applied as the changes from the
+     * previous one, not as a whole new list.
+     */
+    private class ContactsAdapter
+            extends RecyclerView.Adapter {
+
+        private final LayoutInflater inflater = LayoutInflater.from(MainActivity.this);
+
+        private ContactsCursor contacts;
+
+        ContactsAdapter() {
+            setHasStableIds(true);
+        }
+
+        void swapCursor(final ContactsCursor cursor) {
+            final ContactsCursor old = contacts;
+            contacts = cursor;
+
+            // the changes were worked out by the loader, and only apply to what is showing
+            if (null == old || null == cursor || null == cursor.changes || cursor.base != old.rows) {
+                notifyDataSetChanged();
+                return;
+            }
+
+            cursor.changes.dispatchUpdatesTo(this);
+        }
+
+        private int contactCount() {
+            return null == contacts ? 0 : contacts.size();
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(final ViewGroup parent, final int viewType) {
+            return viewType == R.layout.item_contact
+                    ? new ContactHolder(inflater.inflate(R.layout.item_contact, parent, false))
+                    : new HeaderHolder(inflater.inflate(R.layout.no_contacts_header, parent, false));
+        }
+
+        @Override
+        public void onBindViewHolder(final RecyclerView.ViewHolder holder, final int position) {
+            if (holder instanceof ContactHolder && contacts.moveToPosition(position)) {
+                ((ContactHolder) holder).text.setText(contacts.getString(Contacts.COLUMN_NAME));
+            }
+        }
+
+        @Override
+        public int getItemViewType(int position) {
+            return contactCount() == 0 ? R.layout.no_contacts_header : R.layout.item_contact;
+        }
+
+        @Override
+        public long getItemId(final int position) {
+            return contactCount() == 0 ? RecyclerView.NO_ID : contacts.rows.ids[position];
+        }
+
+        @Override
+        public int getItemCount() {
+            return Math.max(1, contactCount());
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(final Menu menu) {
+        super.onCreateOptionsMenu(menu);
+
+        final MenuItem record = menu.add(0, R.id.action_danger, 0, R.string.dangerous_action)
+                .setIcon(R.drawable.ic_action_lock);
+        record.setShowAsAction(MenuItem.SHOW_AS_ACTION_ALWAYS);
+
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(final MenuItem item) {
+        if (item.getItemId() != R.id.action_danger)
+            return super.onOptionsItemSelected(item);
+
+        doSomethingDangerous();
+        return true;
+    }
+
+    private void doSomethingDangerous() {
+        final FragmentManager fm = getSupportFragmentManager();
+
+        if (fm.findFragmentByTag(DANGER_FRAGMENT) != null)
+            return;
+
+        // show the fragment
+        final FragmentTransaction ft = fm.beginTransaction();
+        ft.add(android.R.id.custom, new DangerousFragment(), DANGER_FRAGMENT);
+        ft.addToBackStack(DANGER_FRAGMENT);
+        ft.commit();
+    }
+
+    private class MainActivityPermissionsHandlerClient implements PermissionHandlerClient {
+        @Override
+        public void onPermissionsGranted(int requestCode, Set<String> granted) {
+            if (PERM_REQUEST_CONTACTS != requestCode)
+                return;
+
+            Toast.makeText(MainActivity.this, R.string.permission_granted, Toast.LENGTH_SHORT).show();
+            Log.d(LOGTAG, "Permission granted. Initializing loader.");
+            getSupportLoaderManager().initLoader(CONTACTS_LOADER, null, MainActivity.this);
+        }
+
+        @Override
+        public void onPermissionDeclined(int requestCode, Set<String> denied) {
+            if (PERM_REQUEST_CONTACTS != requestCode)
+                return;
+
+            Toast.makeText(MainActivity.this, R.string.permission_denied, Toast.LENGTH_SHORT).show();
+            Log.d(LOGTAG, "Permission denied. Bailing.");
+
+            final DialogInterface.OnClickListener listener = new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(final DialogInterface dialog, final int which) {
+                    if (which != DialogInterface.BUTTON_NEUTRAL) {
+                        finish();
+                        return;
+                    }
+
+                    gotoSettings();
+                }
+            };
+
+            dialog = new AlertDialog.Builder(MainActivity.this)
+                    .setTitle(R.string.no_soup)
+                    .setMessage(R.string.contacts_permission_denied)
+                    .setPositiveButton(android.R.string.ok, listener)
+                    .setNeutralButton(R.string.change, listener)
+                    .setCancelable(true)
+                    .setOnCancelListener(new DialogInterface.OnCancelListener() {
+                        @Override
+                        public void onCancel(final DialogInterface dialog) {
+                            finish();
+                        }
+                    })
+                    .create();
+            dialog.show();
+        }
+
+        @Override
+        public void onPermissionRationaleDialogDimissed(int requestCode) {
+            rationaleDialog = null;
+        }
+
+        @Override
+        public AlertDialog showPermissionRationaleDialog(int requestCode,
+                                                         @NonNull Collection<String> permissions,
+                                                         @NonNull DialogInterface.OnClickListener listener) {
+            rationaleDialog = new AlertDialog.Builder(MainActivity.this)
+                    .setTitle(R.string.contacts_access)
+                    .setMessage(R.string.contacts_permission_rationale)
+                    .setPositiveButton(R.string.your_contacts, listener)
+                    .setNegativeButton(R.string.no_way, listener)
+                    .show();
+            return rationaleDialog;
+        }
+    }
+
+    static class ContactHolder
+            extends RecyclerView.ViewHolder {
+
+        @BindView(android.R.id.title)
+        TextView text;
+
+        ContactHolder(final View itemView) {
+            super(itemView);
+            ButterKnife.bind(this, itemView);
+        }
+    }
+
+    static class HeaderHolder extends RecyclerView.ViewHolder {
+        HeaderHolder(final View itemView) {
+            super(itemView);
+        }
+    }
+}